@@ -0,0 +1,31 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+/**
+ * Distretti sintetici sparsi nell'area di Denver, così i benchmark non richiedono il DB
+ * (i crimini sono prodotti da {@link it.polito.tdp.crimes.db.GeneratoreCrimini})
+ */
+public class DatiSintetici {
+	private static final double LAT_MIN = 39.61;
+	private static final double LAT_MAX = 39.91;
+	private static final double LON_MIN = -105.11;
+	private static final double LON_MAX = -104.60;
+
+	/**
+	 * Centri di n distretti con id 1..n
+	 */
+	public static Map<Integer, LatLng> centri(int n, long seed) {
+		Random random = new Random(seed);
+		Map<Integer, LatLng> centri = new HashMap<>();
+		for(int d = 1; d <= n; d++) {
+			centri.put(d, new LatLng(LAT_MIN + random.nextDouble() * (LAT_MAX - LAT_MIN),
+					LON_MIN + random.nextDouble() * (LON_MAX - LON_MIN)));
+		}
+		return centri;
+	}
+}
@@ -0,0 +1,50 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ricerca del distretto con un agente libero più vicino: gli agenti sono tutti nella centrale, quindi
+ * per la maggior parte dei distretti la ricerca scorre buona parte della riga dei vicini
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int distretti;
+
+	private Simulatore simulatore;
+	private int prossimo;
+
+	@Setup
+	public void setup() {
+		DistanceMatrix distanze = new DistanceMatrix(DatiSintetici.centri(distretti, 42));
+		List<Event> nessuno = new ArrayList<>();
+		simulatore = new Simulatore(42);
+		simulatore.init(10, nessuno, distretti / 2 + 1, distanze);
+	}
+
+	@Benchmark
+	public int cercaAgente() {
+		prossimo = prossimo + 1 == distretti ? 0 : prossimo + 1;
+		return simulatore.cercaAgente(null, prossimo, 0);
+	}
+}
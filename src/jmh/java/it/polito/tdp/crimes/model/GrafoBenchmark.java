@@ -0,0 +1,52 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+/**
+ * Costruzione della rete dei distretti (matrice delle distanze e grafo JGraphT) a partire dai centri
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrafoBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int distretti;
+
+	private Map<Integer, LatLng> centri;
+
+	@Setup
+	public void setup() {
+		centri = DatiSintetici.centri(distretti, 42);
+	}
+
+	@Benchmark
+	public DistanceMatrix matriceDistanze() {
+		return new DistanceMatrix(centri);
+	}
+
+	@Benchmark
+	public Model grafoCompleto() {
+		Model model = new Model();
+		model.creaGrafo(centri);
+		return model;
+	}
+}
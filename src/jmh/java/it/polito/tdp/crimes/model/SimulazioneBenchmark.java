@@ -0,0 +1,78 @@
+package it.polito.tdp.crimes.model;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.db.EventStore;
+import it.polito.tdp.crimes.db.GeneratoreCrimini;
+
+/**
+ * Simulazione completa su un giorno e su un anno di crimini sintetici, al volume base e dieci volte tanto. Oltre alle simulazioni al secondo
+ * viene riportato il contatore "crimini", cioè i crimini simulati al secondo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SimulazioneBenchmark {
+	private static final LocalDate INIZIO = LocalDate.of(2017, 1, 1);
+	private static final int CRIMINI_AL_GIORNO = 200;
+
+	@Param({"1", "365"})
+	public int giorni;
+
+	@Param({"15"})
+	public int distretti;
+
+	@Param({"10"})
+	public int agenti;
+
+	@Param({"1", "10"})
+	public double scala;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Contatori {
+		public long crimini;
+	}
+
+	private DistanceMatrix distanze;
+	private EventStore crimini;
+	private long seme;
+
+	@Setup
+	public void setup() {
+		Map<Integer, LatLng> centri = DatiSintetici.centri(distretti, 42);
+		distanze = new DistanceMatrix(centri);
+		GeneratoreCrimini generatore = GeneratoreCrimini.uniforme(centri, CRIMINI_AL_GIORNO, 42);
+		generatore.setScala(scala);
+		crimini = EventStore.carica(generatore, INIZIO, INIZIO.plusDays(giorni));
+	}
+
+	@Benchmark
+	public int simula(Contatori contatori) {
+		Simulatore simulatore = new Simulatore(seme++);
+		simulatore.init(agenti, INIZIO, INIZIO.plusDays(giorni - 1), 1, distanze, crimini);
+		int malGestiti = simulatore.run();
+		contatori.crimini += simulatore.getRisultato().getCrimini();
+		return malGestiti;
+	}
+}
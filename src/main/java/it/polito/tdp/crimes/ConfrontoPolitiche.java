@@ -0,0 +1,206 @@
+package it.polito.tdp.crimes;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import it.polito.tdp.crimes.model.DispatchPolicies;
+import it.polito.tdp.crimes.model.DispatchPolicy;
+import it.polito.tdp.crimes.model.Granularita;
+import it.polito.tdp.crimes.model.Model;
+import it.polito.tdp.crimes.model.RisultatoPolitica;
+
+/**
+ * Confronto da riga di comando tra politiche di invio sugli stessi crimini: per ogni politica esegue le repliche
+ * richieste, in parallelo con quelle delle altre, e scrive in CSV il tasso di crimini mal gestiti e i crimini
+ * simulati al secondo:
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=it.polito.tdp.crimes.ConfrontoPolitiche \
+ *     -Dexec.args="--da 2017-01-01 --a 2017-01-31 --n 10 --politiche vicino,carica,priorita --prioritarie murder,robbery"
+ * </pre>
+ * Politiche: vicino (l'agente libero più vicino), carica (la zona meno carica entro 15 minuti), rientro
+ * (il più vicino, con rientro in centrale) e priorita (il più vicino, con --riserva agenti tenuti per le
+ * categorie --prioritarie). In caso di errore il processo termina con codice 1.
+ */
+public class ConfrontoPolitiche {
+
+	private static final String USO = "Uso: ConfrontoPolitiche --da AAAA-MM-GG --a AAAA-MM-GG --n N\n"
+			+ "  [--politiche vicino,carica,rientro,priorita] [--prioritarie categoria,...] [--riserva 1]\n"
+			+ "  [--repliche 10] [--output -|file.csv] [--thread core] [--seme 0]\n"
+			+ "  [--granularita distretto|precinto|quartiere] [--vicini k] [--memoria]";
+
+	private LocalDate da;
+	private LocalDate a;
+	private Integer n;
+	private List<String> nomi = Arrays.asList("vicino", "carica", "rientro", "priorita");
+	private List<String> prioritarie = new ArrayList<>();
+	private int riserva = 1;
+	private int repliche = 10;
+	private String output = "-";
+	private int thread = Runtime.getRuntime().availableProcessors();
+	private long seme = 0;
+	private Granularita granularita = Granularita.DISTRETTO;
+	private int vicini = 0;
+	private boolean memoria;
+
+	public static void main(String[] args) {
+		ConfrontoPolitiche confronto = new ConfrontoPolitiche();
+		Map<String, DispatchPolicy> politiche = null;
+		try {
+			confronto.leggiArgomenti(args);
+			politiche = confronto.politiche();
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USO);
+			System.exit(1);
+		}
+		try {
+			confronto.esegui(politiche);
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	void leggiArgomenti(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String opzione = args[i];
+			if(opzione.equals("--memoria")) {
+				memoria = true;
+				continue;
+			}
+			if(i + 1 >= args.length) {
+				throw new IllegalArgumentException("Manca il valore di " + opzione);
+			}
+			String valore = args[++i];
+			switch (opzione) {
+				case "--da":
+					da = LocalDate.parse(valore);
+					break;
+				case "--a":
+					a = LocalDate.parse(valore);
+					break;
+				case "--n":
+					n = positivo(opzione, valore);
+					break;
+				case "--politiche":
+					nomi = elenco(valore);
+					break;
+				case "--prioritarie":
+					prioritarie = elenco(valore);
+					break;
+				case "--riserva":
+					riserva = Integer.parseInt(valore);
+					break;
+				case "--repliche":
+					repliche = positivo(opzione, valore);
+					break;
+				case "--output":
+					output = valore;
+					break;
+				case "--thread":
+					thread = positivo(opzione, valore);
+					break;
+				case "--seme":
+					seme = Long.parseLong(valore);
+					break;
+				case "--granularita":
+					granularita = Granularita.valueOf(valore.toUpperCase());
+					break;
+				case "--vicini":
+					vicini = Integer.parseInt(valore);
+					break;
+				default:
+					throw new IllegalArgumentException("Opzione sconosciuta: " + opzione);
+			}
+		}
+		if(da == null || a == null || n == null) {
+			throw new IllegalArgumentException("Servono --da, --a e --n");
+		}
+		if(a.isBefore(da)) {
+			throw new IllegalArgumentException("Il periodo finisce prima di iniziare: " + da + " - " + a);
+		}
+	}
+
+	private static int positivo(String opzione, String valore) {
+		int v = Integer.parseInt(valore);
+		if(v <= 0) {
+			throw new IllegalArgumentException(opzione + " deve essere positivo: " + valore);
+		}
+		return v;
+	}
+
+	private static List<String> elenco(String valore) {
+		List<String> valori = new ArrayList<>();
+		for(String parte : valore.split(",")) {
+			if(!parte.trim().isEmpty()) {
+				valori.add(parte.trim());
+			}
+		}
+		return valori;
+	}
+
+	Map<String, DispatchPolicy> politiche() {
+		Map<String, DispatchPolicy> politiche = new LinkedHashMap<>();
+		for(String nome : nomi) {
+			switch (nome.toLowerCase()) {
+				case "vicino":
+					politiche.put(nome, DispatchPolicies.piuVicino());
+					break;
+				case "carica":
+					politiche.put(nome, DispatchPolicies.menoCarica());
+					break;
+				case "rientro":
+					politiche.put(nome, DispatchPolicies.rientroInCentrale());
+					break;
+				case "priorita":
+					if(prioritarie.isEmpty()) {
+						throw new IllegalArgumentException("La politica priorita richiede --prioritarie");
+					}
+					politiche.put(nome, DispatchPolicies.perPriorita(prioritarie, riserva));
+					break;
+				default:
+					throw new IllegalArgumentException("Politica sconosciuta: " + nome);
+			}
+		}
+		if(politiche.isEmpty()) {
+			throw new IllegalArgumentException("Nessuna politica da confrontare");
+		}
+		return politiche;
+	}
+
+	void esegui(Map<String, DispatchPolicy> politiche) throws IOException {
+		long inizio = System.nanoTime();
+		Model model = new Model(memoria);
+		model.setGranularita(granularita);
+		model.setViciniPerZona(vicini);
+		model.creaGrafo(da.getYear());
+		Map<String, RisultatoPolitica> risultati = model.confrontaPolitiche(da, a, n, politiche, repliche, thread, seme);
+
+		try(PrintWriter out = output.equals("-")
+				? new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+				: new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+			// I numeri sono scritti sempre con il punto decimale, qualunque sia la lingua del sistema
+			out.println("politica,N,crimini,repliche,media_mal_gestiti,tasso_mal_gestiti,varianza,p50,p90,secondi_per_replica,crimini_al_secondo");
+			for(Map.Entry<String, RisultatoPolitica> e : risultati.entrySet()) {
+				RisultatoPolitica r = e.getValue();
+				out.println(String.format(Locale.ROOT, "%s,%d,%d,%d,%.4f,%.6f,%.4f,%d,%d,%.3f,%.0f", e.getKey(), n, r.getCrimini(),
+						r.getRepliche(), r.getMedia(), r.getTassoMedio(), r.getVarianza(), r.getPercentile(50), r.getPercentile(90),
+						r.getSecondiPerReplica(), r.getCriminiAlSecondo()));
+			}
+		}
+		System.err.println(String.format(Locale.ROOT, "%d politiche x %d repliche in %.1f s su %d thread",
+				risultati.size(), repliche, (System.nanoTime() - inizio) / 1e9, thread));
+	}
+}
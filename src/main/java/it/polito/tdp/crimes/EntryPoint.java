@@ -18,7 +18,8 @@ public class EntryPoint extends Application {
     	Parent root = loader.load();
         Scene scene = new Scene(root);
          
-        Model model = new Model();
+        // Con -Dcrimes.inMemoria=true gli eventi vengono caricati in memoria una sola volta all'avvio
+        Model model = new Model(Boolean.getBoolean("crimes.inMemoria"));
         FXMLController controller = loader.getController();
         controller.setModel(model);
         
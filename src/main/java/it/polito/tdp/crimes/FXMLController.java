@@ -7,18 +7,33 @@ package it.polito.tdp.crimes;
 import java.net.URL;
 import java.time.DateTimeException;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
+import it.polito.tdp.crimes.model.Granularita;
 import it.polito.tdp.crimes.model.Model;
+import it.polito.tdp.crimes.model.RisultatoDimensionamento;
+import it.polito.tdp.crimes.model.SimulationResult;
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 
 public class FXMLController {
+	private static final int REPLICHE = 20; // repliche per ogni valore di N valutato nel dimensionamento
+	
 	private Model model;
+	private CompletableFuture<?> inCorso; // operazione del modello in esecuzione (null se nessuna)
 
     @FXML // ResourceBundle that was given to the FXMLLoader
     private ResourceBundle resources;
@@ -35,6 +50,9 @@ public class FXMLController {
     @FXML // fx:id="boxGiorno"
     private ComboBox<Integer> boxGiorno; // Value injected by FXMLLoader
 
+    @FXML // fx:id="boxGranularita"
+    private ComboBox<Granularita> boxGranularita; // Value injected by FXMLLoader
+
     @FXML // fx:id="btnCreaReteCittadina"
     private Button btnCreaReteCittadina; // Value injected by FXMLLoader
 
@@ -44,16 +62,32 @@ public class FXMLController {
     @FXML // fx:id="txtN"
     private TextField txtN; // Value injected by FXMLLoader
 
+    @FXML // fx:id="txtTarget"
+    private TextField txtTarget; // Value injected by FXMLLoader
+
+    @FXML // fx:id="btnDimensiona"
+    private Button btnDimensiona; // Value injected by FXMLLoader
+
+    @FXML // fx:id="barAvanzamento"
+    private ProgressBar barAvanzamento; // Value injected by FXMLLoader
+
+    @FXML // fx:id="btnAnnulla"
+    private Button btnAnnulla; // Value injected by FXMLLoader
+
     @FXML // fx:id="txtResult"
     private TextArea txtResult; // Value injected by FXMLLoader
 
     @FXML
     void doCreaReteCittadina(ActionEvent event) {
     	if(boxAnno.getValue() != null) {
-    		model.creaGrafo(boxAnno.getValue());
-    		
-    		txtResult.appendText("# VERTICI: " + model.getNVertici() + "\n# ARCHI: " + model.getNArchi() + "\n");
-    		txtResult.appendText(model.viciniAdiacenti());
+    		model.setGranularita(boxGranularita.getValue());
+    		avvia(model.creaGrafoAsync(boxAnno.getValue(), avanzamento()), new Consumer<Void>() {
+				@Override
+				public void accept(Void nulla) {
+		    		txtResult.appendText("# VERTICI: " + model.getNVertici() + "\n# ARCHI: " + model.getNArchi() + "\n");
+		    		txtResult.appendText(model.viciniAdiacenti());
+				}
+			});
     	}
     }
 
@@ -66,6 +100,7 @@ public class FXMLController {
 			n = Integer.parseInt(txtN.getText());
 		} catch (NumberFormatException e) {
 			txtResult.appendText("Formato N non corretto");
+			return;
 		}
     	
     	anno = boxAnno.getValue();
@@ -77,14 +112,153 @@ public class FXMLController {
     		return;
     	} 
     	
+    	LocalDate giornata;
     	try {
-			LocalDate.of(anno, mese, giorno); // Questo metodo se non ha èparametri corretti scatena un'eccezione
+			giornata = LocalDate.of(anno, mese, giorno); // Questo metodo se non ha èparametri corretti scatena un'eccezione
 		} catch (DateTimeException e) {
 			txtResult.appendText("Data non corretta");
+			return;
 		}
     	
+    	if(model.getDistanze() == null) {
+    		txtResult.appendText("Creare prima la rete cittadina");
+    		return;
+    	}
+    	
     	txtResult.appendText("Simulo con " + n + " agenti");
-    	txtResult.appendText("\nCRIMINI MAL GESTITI "  + model.simula(anno, mese, giorno, n));
+    	avvia(model.simulaAsync(giornata, giornata, n, avanzamento()), new Consumer<SimulationResult>() {
+			@Override
+			public void accept(SimulationResult risultato) {
+				txtResult.appendText("\n" + risultato.riepilogo());
+			}
+		});
+    }
+
+    @FXML
+    void doDimensiona(ActionEvent event) {
+    	txtResult.clear();
+    	double target;
+    	
+    	try {
+			target = Double.parseDouble(txtTarget.getText()) / 100.0;
+		} catch (NumberFormatException e) {
+			txtResult.appendText("Formato target non corretto");
+			return;
+		}
+    	
+    	Integer anno = boxAnno.getValue();
+    	Integer mese = boxMese.getValue();
+    	Integer giorno = boxGiorno.getValue();
+    	
+    	if(anno == null || mese == null || giorno == null) {
+    		txtResult.appendText("Inserire tutti i campi");
+    		return;
+    	}
+    	
+    	LocalDate giornata;
+    	try {
+			giornata = LocalDate.of(anno, mese, giorno);
+		} catch (DateTimeException e) {
+			txtResult.appendText("Data non corretta");
+			return;
+		}
+    	
+    	if(model.getDistanze() == null) {
+    		txtResult.appendText("Creare prima la rete cittadina");
+    		return;
+    	}
+    	
+    	avvia(model.dimensionaAsync(giornata, giornata, target, REPLICHE, Runtime.getRuntime().availableProcessors(), System.nanoTime(), avanzamento()),
+    			new Consumer<RisultatoDimensionamento>() {
+					@Override
+					public void accept(RisultatoDimensionamento risultato) {
+						txtResult.appendText(risultato.toString());
+					}
+				});
+    }
+
+    @FXML
+    void doAnnulla(ActionEvent event) {
+    	if(inCorso != null) {
+    		inCorso.cancel(true);
+    	}
+    }
+    
+    /**
+     * Segue un'operazione asincrona del modello: mentre è in corso i comandi sono disabilitati, al termine
+     * il risultato viene passato a completamento sul thread dell'interfaccia
+     */
+    private <T> void avvia(CompletableFuture<T> operazione, final Consumer<T> completamento) {
+    	inCorso = operazione;
+    	abilitaComandi(false);
+    	barAvanzamento.setProgress(ProgressBar.INDETERMINATE_PROGRESS);
+    	
+    	operazione.whenComplete(new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept(final T risultato, final Throwable errore) {
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						inCorso = null;
+						abilitaComandi(true);
+						barAvanzamento.setProgress(0.0);
+						Throwable causa = errore instanceof CompletionException ? errore.getCause() : errore;
+						if(causa instanceof CancellationException) {
+							txtResult.appendText("\nOperazione annullata\n");
+						} else if(causa != null) {
+							txtResult.appendText("\nErrore: " + causa + "\n");
+						} else {
+							completamento.accept(risultato);
+						}
+					}
+				});
+			}
+		});
+    }
+    
+    private void abilitaComandi(boolean abilitati) {
+    	btnCreaReteCittadina.setDisable(!abilitati);
+    	btnSimula.setDisable(!abilitati);
+    	btnDimensiona.setDisable(!abilitati);
+    	btnAnnulla.setDisable(abilitati);
+    }
+    
+    /**
+     * Riporta sulla barra l'avanzamento comunicato dal thread del modello
+     */
+    private DoubleConsumer avanzamento() {
+    	return new DoubleConsumer() {
+			@Override
+			public void accept(final double frazione) {
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						barAvanzamento.setProgress(frazione);
+					}
+				});
+			}
+		};
+    }
+    
+    /**
+     * Aggiunge gli elementi alla tendina appena la query è terminata, senza bloccare l'avvio
+     */
+    private void riempi(CompletableFuture<List<Integer>> valori, final ComboBox<Integer> box) {
+    	valori.whenComplete(new BiConsumer<List<Integer>, Throwable>() {
+			@Override
+			public void accept(final List<Integer> lista, final Throwable errore) {
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if(lista != null) {
+							box.getItems().addAll(lista);
+						} else {
+							txtResult.appendText("Errore nel caricamento delle date: " + errore + "\n");
+						}
+					}
+				});
+			}
+		});
     }
 
     @FXML // This method is called by the FXMLLoader when initialization is complete
@@ -92,18 +266,26 @@ public class FXMLController {
         assert boxAnno != null : "fx:id=\"boxAnno\" was not injected: check your FXML file 'Scene.fxml'.";
         assert boxMese != null : "fx:id=\"boxMese\" was not injected: check your FXML file 'Scene.fxml'.";
         assert boxGiorno != null : "fx:id=\"boxGiorno\" was not injected: check your FXML file 'Scene.fxml'.";
+        assert boxGranularita != null : "fx:id=\"boxGranularita\" was not injected: check your FXML file 'Scene.fxml'.";
         assert btnCreaReteCittadina != null : "fx:id=\"btnCreaReteCittadina\" was not injected: check your FXML file 'Scene.fxml'.";
         assert btnSimula != null : "fx:id=\"btnSimula\" was not injected: check your FXML file 'Scene.fxml'.";
         assert txtN != null : "fx:id=\"txtN\" was not injected: check your FXML file 'Scene.fxml'.";
+        assert txtTarget != null : "fx:id=\"txtTarget\" was not injected: check your FXML file 'Scene.fxml'.";
+        assert btnDimensiona != null : "fx:id=\"btnDimensiona\" was not injected: check your FXML file 'Scene.fxml'.";
+        assert barAvanzamento != null : "fx:id=\"barAvanzamento\" was not injected: check your FXML file 'Scene.fxml'.";
+        assert btnAnnulla != null : "fx:id=\"btnAnnulla\" was not injected: check your FXML file 'Scene.fxml'.";
         assert txtResult != null : "fx:id=\"txtResult\" was not injected: check your FXML file 'Scene.fxml'.";
 
+        boxGranularita.getItems().addAll(Granularita.values());
+        boxGranularita.setValue(Granularita.DISTRETTO);
+
     }
     
     public void setModel(Model model) {
     	this.model = model;
     	
-    	boxAnno.getItems().addAll(model.getAnni());
-    	boxMese.getItems().addAll(model.getMesi());
-    	boxGiorno.getItems().addAll(model.getGiorni());
+    	riempi(model.getAnniAsync(), boxAnno);
+    	riempi(model.getMesiAsync(), boxMese);
+    	riempi(model.getGiorniAsync(), boxGiorno);
     }
 }
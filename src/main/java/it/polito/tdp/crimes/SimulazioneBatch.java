@@ -0,0 +1,221 @@
+package it.polito.tdp.crimes;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import it.polito.tdp.crimes.model.Granularita;
+import it.polito.tdp.crimes.model.Model;
+import it.polito.tdp.crimes.model.RisultatoBatch;
+
+/**
+ * Simulazioni in batch da riga di comando, senza interfaccia grafica (per i server senza display).
+ * Per ogni valore di N esegue le repliche richieste sul periodo indicato, usando tutti i core, e scrive
+ * le statistiche dei crimini mal gestiti in CSV o JSON:
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=it.polito.tdp.crimes.SimulazioneBatch \
+ *     -Dexec.args="--da 2017-01-01 --a 2017-01-31 --n 5,10,15-20 --repliche 20 --output risultati.csv"
+ * </pre>
+ * Con --output - i risultati vanno sullo standard output; il formato è JSON se il file finisce in .json
+ * oppure con --formato json. In caso di errore il processo termina con codice 1.
+ */
+public class SimulazioneBatch {
+
+	private static final String USO = "Uso: SimulazioneBatch --da AAAA-MM-GG --a AAAA-MM-GG --n N1,N2,DA-A[:PASSO],...\n"
+			+ "  [--repliche 10] [--output -|file.csv|file.json] [--formato csv|json] [--thread core]\n"
+			+ "  [--seme 0] [--granularita distretto|precinto|quartiere] [--vicini k] [--puntuale] [--memoria]";
+
+	private LocalDate da;
+	private LocalDate a;
+	private List<Integer> valoriN = new ArrayList<>();
+	private int repliche = 10;
+	private String output = "-";
+	private String formato;
+	private int thread = Runtime.getRuntime().availableProcessors();
+	private long seme = 0;
+	private Granularita granularita = Granularita.DISTRETTO;
+	private int vicini = 0;
+	private boolean puntuale;
+	private boolean memoria;
+
+	public static void main(String[] args) {
+		SimulazioneBatch batch = new SimulazioneBatch();
+		try {
+			batch.leggiArgomenti(args);
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USO);
+			System.exit(1);
+		}
+		try {
+			batch.esegui();
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	void leggiArgomenti(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String opzione = args[i];
+			switch (opzione) {
+				case "--puntuale":
+					puntuale = true;
+					continue;
+				case "--memoria":
+					memoria = true;
+					continue;
+				default:
+					break;
+			}
+			if(i + 1 >= args.length) {
+				throw new IllegalArgumentException("Manca il valore di " + opzione);
+			}
+			String valore = args[++i];
+			switch (opzione) {
+				case "--da":
+					da = LocalDate.parse(valore);
+					break;
+				case "--a":
+					a = LocalDate.parse(valore);
+					break;
+				case "--n":
+					valoriN = leggiValoriN(valore);
+					break;
+				case "--repliche":
+					repliche = positivo(opzione, valore);
+					break;
+				case "--output":
+					output = valore;
+					break;
+				case "--formato":
+					formato = valore.toLowerCase();
+					break;
+				case "--thread":
+					thread = positivo(opzione, valore);
+					break;
+				case "--seme":
+					seme = Long.parseLong(valore);
+					break;
+				case "--granularita":
+					granularita = Granularita.valueOf(valore.toUpperCase());
+					break;
+				case "--vicini":
+					vicini = Integer.parseInt(valore);
+					break;
+				default:
+					throw new IllegalArgumentException("Opzione sconosciuta: " + opzione);
+			}
+		}
+		if(da == null || a == null || valoriN.isEmpty()) {
+			throw new IllegalArgumentException("Servono --da, --a e --n");
+		}
+		if(a.isBefore(da)) {
+			throw new IllegalArgumentException("Il periodo finisce prima di iniziare: " + da + " - " + a);
+		}
+		if(formato == null) {
+			formato = output.toLowerCase().endsWith(".json") ? "json" : "csv";
+		}
+		if(!formato.equals("csv") && !formato.equals("json")) {
+			throw new IllegalArgumentException("Formato non valido: " + formato);
+		}
+	}
+
+	private static int positivo(String opzione, String valore) {
+		int v = Integer.parseInt(valore);
+		if(v <= 0) {
+			throw new IllegalArgumentException(opzione + " deve essere positivo: " + valore);
+		}
+		return v;
+	}
+
+	/**
+	 * Valori separati da virgole, ognuno un numero o un intervallo da-a con passo facoltativo (5-20:5)
+	 */
+	static List<Integer> leggiValoriN(String valore) {
+		Set<Integer> valori = new LinkedHashSet<>();
+		for(String parte : valore.split(",")) {
+			parte = parte.trim();
+			int passo = 1;
+			int duePunti = parte.indexOf(':');
+			if(duePunti >= 0) {
+				passo = Integer.parseInt(parte.substring(duePunti + 1));
+				parte = parte.substring(0, duePunti);
+			}
+			int trattino = parte.indexOf('-');
+			int primo = Integer.parseInt(trattino >= 0 ? parte.substring(0, trattino) : parte);
+			int ultimo = trattino >= 0 ? Integer.parseInt(parte.substring(trattino + 1)) : primo;
+			if(primo < 0 || ultimo < primo || passo <= 0) {
+				throw new IllegalArgumentException("Valori di N non validi: " + parte);
+			}
+			for(int n = primo; n <= ultimo; n += passo) {
+				valori.add(n);
+			}
+		}
+		return new ArrayList<>(valori);
+	}
+
+	void esegui() throws IOException {
+		long inizio = System.nanoTime();
+		Model model = new Model(memoria);
+		model.setGranularita(granularita);
+		model.setViciniPerZona(vicini);
+		model.setPuntuale(puntuale);
+		model.creaGrafo(da.getYear());
+		Map<Integer, RisultatoBatch> risultati = model.simulaBatch(da, a, valoriN, repliche, thread, seme);
+
+		try(PrintWriter out = output.equals("-")
+				? new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+				: new PrintWriter(Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8))) {
+			if(formato.equals("json")) {
+				scriviJson(out, risultati);
+			} else {
+				scriviCsv(out, risultati);
+			}
+		}
+		System.err.println(String.format(Locale.ROOT, "%d valori di N x %d repliche in %.1f s su %d thread",
+				risultati.size(), repliche, (System.nanoTime() - inizio) / 1e9, thread));
+	}
+
+	// I numeri sono scritti sempre con il punto decimale, qualunque sia la lingua del sistema
+
+	private void scriviCsv(PrintWriter out, Map<Integer, RisultatoBatch> risultati) {
+		out.println("da,a,granularita,N,crimini,repliche,media_mal_gestiti,tasso_mal_gestiti,varianza,min,p50,p90,p99,max");
+		for(Map.Entry<Integer, RisultatoBatch> e : risultati.entrySet()) {
+			RisultatoBatch r = e.getValue();
+			out.println(String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%.4f,%.6f,%.4f,%d,%d,%d,%d,%d", da, a, granularita,
+					e.getKey(), r.getCrimini(), r.getRepliche(), r.getMedia(), r.getTassoMedio(), r.getVarianza(),
+					r.getMin(), r.getPercentile(50), r.getPercentile(90), r.getPercentile(99), r.getMax()));
+		}
+	}
+
+	private void scriviJson(PrintWriter out, Map<Integer, RisultatoBatch> risultati) {
+		out.println("{");
+		out.println(String.format(Locale.ROOT, "  \"da\": \"%s\", \"a\": \"%s\", \"granularita\": \"%s\", \"vicini\": %d, \"puntuale\": %b,",
+				da, a, granularita, vicini, puntuale));
+		out.println(String.format(Locale.ROOT, "  \"repliche\": %d, \"seme\": %d,", repliche, seme));
+		out.println("  \"risultati\": [");
+		int i = 0;
+		for(Map.Entry<Integer, RisultatoBatch> e : risultati.entrySet()) {
+			RisultatoBatch r = e.getValue();
+			out.print(String.format(Locale.ROOT, "    {\"N\": %d, \"crimini\": %d, \"mediaMalGestiti\": %.4f, \"tassoMalGestiti\": %.6f, "
+					+ "\"varianza\": %.4f, \"min\": %d, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"max\": %d}",
+					e.getKey(), r.getCrimini(), r.getMedia(), r.getTassoMedio(), r.getVarianza(),
+					r.getMin(), r.getPercentile(50), r.getPercentile(90), r.getPercentile(99), r.getMax()));
+			out.println(++i < risultati.size() ? "," : "");
+		}
+		out.println("  ]");
+		out.println("}");
+	}
+}
@@ -24,6 +24,8 @@ public class DBConnect {
 			config.addDataSourceProperty("cachePrepStmts", "true");
 			config.addDataSourceProperty("prepStmtCacheSize", "250");
 			config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+			// I batch di INSERT vengono inviati come un unico INSERT multiriga
+			config.addDataSourceProperty("rewriteBatchedStatements", "true");
 			
 			ds = new HikariDataSource(config);
 		}
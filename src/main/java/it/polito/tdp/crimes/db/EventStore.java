@@ -0,0 +1,622 @@
+package it.polito.tdp.crimes.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.Granularita;
+
+/**
+ * Copia in memoria della tabella EVENTS, caricata una sola volta e memorizzata per colonne in array primitivi
+ * ordinati per reported_date. Risponde alle stesse interrogazioni di {@link EventsDao} senza accedere al DB,
+ * quindi può sostituirlo ovunque sia richiesto un EventsDao.
+ * Le date sono secondi dall'epoca (la data locale letta come UTC), le stringhe ripetute (categoria, tipo,
+ * quartiere) sono codificate con un dizionario. L'indirizzo non viene conservato: gli Event restituiti
+ * hanno incident_address a null.
+ * <p>
+ * {@link #inserisciEventi(List)} aggiunge gli eventi alle colonne invece di scriverli nel DB, quindi lo store
+ * può ricevere i batch di una {@link PipelineIngestione}. I metodi pubblici sono sincronizzati: quelli che
+ * scorrono gli eventi tengono lo store bloccato finché il consumer non ha finito.
+ */
+public class EventStore extends EventsDao {
+	private static final int DISTRETTO_MANCANTE = Integer.MIN_VALUE; // district_id NULL
+	private static final int PRECINTO_MANCANTE = Integer.MIN_VALUE; // precinct_id NULL
+
+	private int size;
+	private long[] incidentId;
+	private int[] offenseCode;
+	private int[] offenseCodeExtension;
+	private int[] offenseType; // codice nel dizionario
+	private int[] categoria; // codice nel dizionario
+	private long[] data; // reported_date in secondi
+	private double[] lon;
+	private double[] lat;
+	private int[] distretto; // DISTRETTO_MANCANTE se NULL
+	private int[] precinto; // PRECINTO_MANCANTE se NULL
+	private int[] quartiere; // codice nel dizionario
+	private byte[] isCrime;
+	private byte[] isTraffic;
+
+	private final List<String> dizionario = new ArrayList<>();
+	private final Map<String, Integer> codici = new HashMap<>();
+
+	private final Set<Integer> anni = new TreeSet<>();
+	private final Set<Integer> mesi = new TreeSet<>();
+	private final Set<Integer> giorni = new TreeSet<>();
+	private final Set<Integer> distretti = new TreeSet<>();
+
+	private EventStore() {
+		int capacita = 1 << 16;
+		incidentId = new long[capacita];
+		offenseCode = new int[capacita];
+		offenseCodeExtension = new int[capacita];
+		offenseType = new int[capacita];
+		categoria = new int[capacita];
+		data = new long[capacita];
+		lon = new double[capacita];
+		lat = new double[capacita];
+		distretto = new int[capacita];
+		precinto = new int[capacita];
+		quartiere = new int[capacita];
+		isCrime = new byte[capacita];
+		isTraffic = new byte[capacita];
+	}
+
+	/**
+	 * Carica dal DB l'intera tabella EVENTS
+	 */
+	public static EventStore carica() {
+		String sql = "SELECT incident_id, offense_code, offense_code_extension, offense_type_id, offense_category_id, "
+				+ "reported_date, geo_lon, geo_lat, district_id, precinct_id, neighborhood_id, is_crime, is_traffic "
+				+ "FROM EVENTS "
+				+ "ORDER BY reported_date";
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			// Cursore in streaming: le righe vengono copiate nelle colonne man mano che arrivano
+			PreparedStatement st = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY) ;
+			st.setFetchSize(1000);
+
+			EventStore store = new EventStore();
+
+			ResultSet res = st.executeQuery() ;
+
+			while(res.next()) {
+				store.aggiungi(res.getLong("incident_id"),
+						res.getInt("offense_code"),
+						res.getInt("offense_code_extension"),
+						res.getString("offense_type_id"),
+						res.getString("offense_category_id"),
+						res.getTimestamp("reported_date").toLocalDateTime(),
+						res.getDouble("geo_lon"),
+						res.getDouble("geo_lat"),
+						EventsDao.intero(res, "district_id"),
+						EventsDao.intero(res, "precinct_id"),
+						res.getString("neighborhood_id"),
+						res.getInt("is_crime"),
+						res.getInt("is_traffic"));
+			}
+
+			conn.close();
+			store.completa();
+			return store ;
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null ;
+		}
+	}
+
+	/**
+	 * Costruisce lo store a partire da eventi già in memoria (ad esempio generati per un test di carico)
+	 */
+	public static EventStore da(Collection<Event> eventi) {
+		EventStore store = new EventStore();
+		for(Event e : eventi) {
+			store.aggiungi(e);
+		}
+		store.completa();
+		return store;
+	}
+
+	/**
+	 * Copia in memoria gli eventi con reported_date in [da, a) letti in streaming dalla sorgente indicata (il DB o un generatore)
+	 */
+	public static EventStore carica(SorgenteEventi dao, LocalDate da, LocalDate a) {
+		final EventStore store = new EventStore();
+		dao.forEachEventByDate(da, a, new Consumer<Event>() {
+			@Override
+			public void accept(Event e) {
+				store.aggiungi(e);
+			}
+		});
+		store.completa();
+		return store;
+	}
+
+	private void aggiungi(Event e) {
+		aggiungi(e.getIncident_id(), e.getOffense_code(), e.getOffense_code_extension(), e.getOffense_type_id(),
+				e.getOffense_category_id(), e.getReported_date(), e.getGeo_lon(), e.getGeo_lat(), e.getDistrict_id(),
+				e.getPrecinct_id(), e.getNeighborhood_id(), e.getIs_crime(), e.getIs_traffic());
+	}
+
+	private void aggiungi(Long incident_id, Integer offense_code, Integer offense_code_extension, String offense_type_id,
+			String offense_category_id, LocalDateTime reported_date, double geo_lon, double geo_lat, Integer district_id,
+			Integer precinct_id, String neighborhood_id, Integer is_crime, Integer is_traffic) {
+		if(size == data.length) {
+			cresci(Math.max(size * 2, 16));
+		}
+		incidentId[size] = valore(incident_id);
+		offenseCode[size] = valore(offense_code);
+		offenseCodeExtension[size] = valore(offense_code_extension);
+		offenseType[size] = codifica(offense_type_id);
+		categoria[size] = codifica(offense_category_id);
+		data[size] = secondi(reported_date);
+		lon[size] = geo_lon;
+		lat[size] = geo_lat;
+		distretto[size] = district_id == null ? DISTRETTO_MANCANTE : district_id;
+		precinto[size] = precinct_id == null ? PRECINTO_MANCANTE : precinct_id;
+		quartiere[size] = codifica(neighborhood_id);
+		isCrime[size] = (byte) valore(is_crime);
+		isTraffic[size] = (byte) valore(is_traffic);
+		size++;
+	}
+
+	private void cresci(int capacita) {
+		incidentId = Arrays.copyOf(incidentId, capacita);
+		offenseCode = Arrays.copyOf(offenseCode, capacita);
+		offenseCodeExtension = Arrays.copyOf(offenseCodeExtension, capacita);
+		offenseType = Arrays.copyOf(offenseType, capacita);
+		categoria = Arrays.copyOf(categoria, capacita);
+		data = Arrays.copyOf(data, capacita);
+		lon = Arrays.copyOf(lon, capacita);
+		lat = Arrays.copyOf(lat, capacita);
+		distretto = Arrays.copyOf(distretto, capacita);
+		precinto = Arrays.copyOf(precinto, capacita);
+		quartiere = Arrays.copyOf(quartiere, capacita);
+		isCrime = Arrays.copyOf(isCrime, capacita);
+		isTraffic = Arrays.copyOf(isTraffic, capacita);
+	}
+
+	/**
+	 * Riduce gli array alla dimensione effettiva, li ordina per data (se necessario) e
+	 * precalcola le liste di anni, mesi, giorni e distretti
+	 */
+	private void completa() {
+		cresci(size);
+		indicizza(0);
+		ordina(0);
+	}
+
+	/**
+	 * Aggiunge alle liste di anni, mesi, giorni e distretti quelli degli eventi dalla posizione da in poi
+	 */
+	private void indicizza(int da) {
+		for(int i = da; i < size; i++) {
+			LocalDateTime d = LocalDateTime.ofEpochSecond(data[i], 0, ZoneOffset.UTC);
+			anni.add(d.getYear());
+			mesi.add(d.getMonthValue());
+			giorni.add(d.getDayOfMonth());
+			if(distretto[i] != DISTRETTO_MANCANTE) {
+				distretti.add(distretto[i]);
+			}
+		}
+	}
+
+	/**
+	 * Riordina per data se gli eventi dalla posizione da in poi non sono in ordine (quelli prima lo sono già)
+	 */
+	private void ordina(int da) {
+		boolean ordinato = true;
+		for(int i = Math.max(da, 1); i < size && ordinato; i++) {
+			ordinato = data[i-1] <= data[i];
+		}
+		if(ordinato) {
+			return;
+		}
+		Integer[] ordine = new Integer[size];
+		for(int i = 0; i < size; i++) {
+			ordine[i] = i;
+		}
+		// Ordinamento stabile: a parità di data si mantiene l'ordine di inserimento
+		Arrays.sort(ordine, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Long.compare(data[o1], data[o2]);
+			}
+		});
+		int[] permutazione = new int[size];
+		for(int i = 0; i < size; i++) {
+			permutazione[i] = ordine[i];
+		}
+		permuta(permutazione);
+	}
+
+	/**
+	 * Aggiunge gli eventi allo store al posto di scriverli nel DB: da qui in poi tutte le interrogazioni li vedono
+	 * @return il numero di eventi aggiunti
+	 */
+	@Override
+	public synchronized int inserisciEventi(List<Event> eventi) {
+		int prima = size;
+		for(Event e : eventi) {
+			aggiungi(e);
+		}
+		indicizza(prima);
+		ordina(prima);
+		return eventi.size();
+	}
+
+	private void permuta(int[] p) {
+		incidentId = permuta(incidentId, p);
+		offenseCode = permuta(offenseCode, p);
+		offenseCodeExtension = permuta(offenseCodeExtension, p);
+		offenseType = permuta(offenseType, p);
+		categoria = permuta(categoria, p);
+		data = permuta(data, p);
+		lon = permuta(lon, p);
+		lat = permuta(lat, p);
+		distretto = permuta(distretto, p);
+		precinto = permuta(precinto, p);
+		quartiere = permuta(quartiere, p);
+		isCrime = permuta(isCrime, p);
+		isTraffic = permuta(isTraffic, p);
+	}
+
+	private static long[] permuta(long[] a, int[] p) {
+		long[] r = new long[p.length];
+		for(int i = 0; i < p.length; i++) r[i] = a[p[i]];
+		return r;
+	}
+
+	private static int[] permuta(int[] a, int[] p) {
+		int[] r = new int[p.length];
+		for(int i = 0; i < p.length; i++) r[i] = a[p[i]];
+		return r;
+	}
+
+	private static double[] permuta(double[] a, int[] p) {
+		double[] r = new double[p.length];
+		for(int i = 0; i < p.length; i++) r[i] = a[p[i]];
+		return r;
+	}
+
+	private static byte[] permuta(byte[] a, int[] p) {
+		byte[] r = new byte[p.length];
+		for(int i = 0; i < p.length; i++) r[i] = a[p[i]];
+		return r;
+	}
+
+	private int codifica(String s) {
+		if(s == null) {
+			return -1;
+		}
+		Integer codice = codici.get(s);
+		if(codice == null) {
+			codice = dizionario.size();
+			dizionario.add(s);
+			codici.put(s, codice);
+		}
+		return codice;
+	}
+
+	private String decodifica(int codice) {
+		return codice < 0 ? null : dizionario.get(codice);
+	}
+
+	private static long valore(Long l) {
+		return l == null ? 0 : l;
+	}
+
+	private static int valore(Integer i) {
+		return i == null ? 0 : i;
+	}
+
+	private static long secondi(LocalDateTime data) {
+		return data.toEpochSecond(ZoneOffset.UTC);
+	}
+
+	private static long secondi(LocalDate data) {
+		return secondi(data.atStartOfDay());
+	}
+
+	/**
+	 * Prima posizione con data >= t (gli eventi sono ordinati per data)
+	 */
+	private int primaDa(long t) {
+		int lo = 0;
+		int hi = size;
+		while(lo < hi) {
+			int m = (lo + hi) >>> 1;
+			if(data[m] < t) {
+				lo = m + 1;
+			} else {
+				hi = m;
+			}
+		}
+		return lo;
+	}
+
+	private Event evento(int i) {
+		return new Event(incidentId[i], offenseCode[i], offenseCodeExtension[i], decodifica(offenseType[i]),
+				decodifica(categoria[i]), LocalDateTime.ofEpochSecond(data[i], 0, ZoneOffset.UTC), null, lon[i], lat[i],
+				distretto[i] == DISTRETTO_MANCANTE ? null : Integer.valueOf(distretto[i]), precinto[i] == PRECINTO_MANCANTE ? null : Integer.valueOf(precinto[i]), decodifica(quartiere[i]), (int) isCrime[i], (int) isTraffic[i]);
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Numero di eventi con reported_date in [da, a)
+	 */
+	public synchronized int conta(LocalDate da, LocalDate a) {
+		return Math.max(primaDa(secondi(a)) - primaDa(secondi(da)), 0);
+	}
+
+	/**
+	 * Giorno del primo evento (null se lo store è vuoto)
+	 */
+	public synchronized LocalDate getPrimoGiorno() {
+		return size == 0 ? null : LocalDateTime.ofEpochSecond(data[0], 0, ZoneOffset.UTC).toLocalDate();
+	}
+
+	/**
+	 * Giorno dell'ultimo evento (null se lo store è vuoto)
+	 */
+	public synchronized LocalDate getUltimoGiorno() {
+		return size == 0 ? null : LocalDateTime.ofEpochSecond(data[size-1], 0, ZoneOffset.UTC).toLocalDate();
+	}
+
+	@Override
+	public synchronized List<Event> listAllEvents() {
+		List<Event> list = new ArrayList<>(size);
+		for(int i = 0; i < size; i++) {
+			list.add(evento(i));
+		}
+		return list;
+	}
+
+	@Override
+	public synchronized long forEachEvent(Consumer<Event> consumer) {
+		for(int i = 0; i < size; i++) {
+			consumer.accept(evento(i));
+		}
+		return size;
+	}
+
+	@Override
+	public synchronized long forEachEventByDate(LocalDate da, LocalDate a, Consumer<Event> consumer) {
+		int inizio = primaDa(secondi(da));
+		int fine = primaDa(secondi(a));
+		for(int i = inizio; i < fine; i++) {
+			consumer.accept(evento(i));
+		}
+		return Math.max(fine - inizio, 0);
+	}
+
+	@Override
+	public synchronized long[] firmaDati() {
+		return new long[] {size, size == 0 ? Long.MIN_VALUE : data[size-1]};
+	}
+
+	@Override
+	public synchronized List<Integer> anniCrimes() {
+		return new ArrayList<>(anni);
+	}
+
+	@Override
+	public synchronized List<Integer> mesiCrimes() {
+		return new ArrayList<>(mesi);
+	}
+
+	@Override
+	public synchronized List<Integer> giorniCrimes() {
+		return new ArrayList<>(giorni);
+	}
+
+	@Override
+	public synchronized List<Integer> getVertici() {
+		return new ArrayList<>(distretti);
+	}
+
+	@Override
+	public synchronized Double longMedia(int vertice, int anno) {
+		int da = primaDa(secondi(LocalDate.of(anno, 1, 1)));
+		int a = primaDa(secondi(LocalDate.of(anno + 1, 1, 1)));
+		double somma = 0.0;
+		int n = 0;
+		for(int i = da; i < a; i++) {
+			if(distretto[i] == vertice) {
+				somma += lon[i];
+				n++;
+			}
+		}
+		return n == 0 ? 0.0 : somma / n;
+	}
+
+	@Override
+	public synchronized Double latMedia(int vertice, int anno) {
+		int da = primaDa(secondi(LocalDate.of(anno, 1, 1)));
+		int a = primaDa(secondi(LocalDate.of(anno + 1, 1, 1)));
+		double somma = 0.0;
+		int n = 0;
+		for(int i = da; i < a; i++) {
+			if(distretto[i] == vertice) {
+				somma += lat[i];
+				n++;
+			}
+		}
+		return n == 0 ? 0.0 : somma / n;
+	}
+
+	@Override
+	public synchronized Map<Integer, LatLng> centriDistretti(int anno) {
+		int da = primaDa(secondi(LocalDate.of(anno, 1, 1)));
+		int a = primaDa(secondi(LocalDate.of(anno + 1, 1, 1)));
+		Map<Integer, double[]> somme = new HashMap<>(); // distretto -> {somma lat, somma lon, conteggio}
+		for(int i = da; i < a; i++) {
+			if(distretto[i] == DISTRETTO_MANCANTE) {
+				continue;
+			}
+			double[] s = somme.get(distretto[i]);
+			if(s == null) {
+				s = new double[3];
+				somme.put(distretto[i], s);
+			}
+			s[0] += lat[i];
+			s[1] += lon[i];
+			s[2]++;
+		}
+
+		Map<Integer, LatLng> result = new HashMap<>();
+		for(Map.Entry<Integer, double[]> e : somme.entrySet()) {
+			double[] s = e.getValue();
+			result.put(e.getKey(), new LatLng(s[0] / s[2], s[1] / s[2]));
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized Integer getDistrettoMin(Integer anno) {
+		int da = primaDa(secondi(LocalDate.of(anno, 1, 1)));
+		int a = primaDa(secondi(LocalDate.of(anno + 1, 1, 1)));
+		Map<Integer, Integer> conteggi = new TreeMap<>();
+		for(int i = da; i < a; i++) {
+			if(distretto[i] == DISTRETTO_MANCANTE) {
+				continue;
+			}
+			Integer c = conteggi.get(distretto[i]);
+			conteggi.put(distretto[i], c == null ? 1 : c + 1);
+		}
+
+		Integer result = 0;
+		int min = Integer.MAX_VALUE;
+		for(Map.Entry<Integer, Integer> e : conteggi.entrySet()) {
+			if(e.getValue() < min) {
+				min = e.getValue();
+				result = e.getKey();
+			}
+		}
+		return result;
+	}
+
+	// Valore della colonna della granularità per l'evento i (null se manca)
+	private String zona(Granularita granularita, int i) {
+		switch(granularita) {
+			case DISTRETTO:
+				return distretto[i] == DISTRETTO_MANCANTE ? null : String.valueOf(distretto[i]);
+			case PRECINTO:
+				// Come nelle query del DB (IS NOT NULL) un precinto mancante non è una zona
+				return precinto[i] == PRECINTO_MANCANTE ? null : String.valueOf(precinto[i]);
+			default:
+				return decodifica(quartiere[i]);
+		}
+	}
+
+	@Override
+	public synchronized List<String> getZone(Granularita granularita) {
+		Set<String> zone = new TreeSet<>();
+		for(int i = 0; i < size; i++) {
+			String z = zona(granularita, i);
+			if(z != null) {
+				zone.add(z);
+			}
+		}
+		return new ArrayList<>(zone);
+	}
+
+	@Override
+	public synchronized Map<String, LatLng> centriZone(Granularita granularita, int anno) {
+		Map<String, LatLng> result = new HashMap<>();
+		for(Map.Entry<String, double[]> e : sommeZone(granularita, anno).entrySet()) {
+			double[] s = e.getValue();
+			result.put(e.getKey(), new LatLng(s[0] / s[2], s[1] / s[2]));
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized Map<String, double[]> sommeZone(Granularita granularita, int anno) {
+		int da = primaDa(secondi(LocalDate.of(anno, 1, 1)));
+		int a = primaDa(secondi(LocalDate.of(anno + 1, 1, 1)));
+		Map<String, double[]> somme = new HashMap<>(); // zona -> {somma lat, somma lon, conteggio}
+		for(int i = da; i < a; i++) {
+			String z = zona(granularita, i);
+			if(z == null) {
+				continue;
+			}
+			double[] s = somme.get(z);
+			if(s == null) {
+				s = new double[3];
+				somme.put(z, s);
+			}
+			s[0] += lat[i];
+			s[1] += lon[i];
+			s[2]++;
+		}
+		return somme;
+	}
+
+	@Override
+	public synchronized String getZonaMin(Granularita granularita, Integer anno) {
+		int da = primaDa(secondi(LocalDate.of(anno, 1, 1)));
+		int a = primaDa(secondi(LocalDate.of(anno + 1, 1, 1)));
+		Map<String, Integer> conteggi = new TreeMap<>();
+		for(int i = da; i < a; i++) {
+			String z = zona(granularita, i);
+			if(z != null) {
+				Integer c = conteggi.get(z);
+				conteggi.put(z, c == null ? 1 : c + 1);
+			}
+		}
+
+		String result = null;
+		int min = Integer.MAX_VALUE;
+		for(Map.Entry<String, Integer> e : conteggi.entrySet()) {
+			if(e.getValue() < min) {
+				min = e.getValue();
+				result = e.getKey();
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized List<Event> listAllEventsByDate(Integer anno, Integer mese, Integer giorno) {
+		LocalDate giornata;
+		try {
+			giornata = LocalDate.of(anno, mese, giorno);
+		} catch (DateTimeException e) {
+			// Come la query sul DB: una data inesistente non ha eventi
+			return new ArrayList<>();
+		}
+		int da = primaDa(secondi(giornata));
+		int a = primaDa(secondi(giornata.plusDays(1)));
+		List<Event> list = new ArrayList<>(a - da);
+		for(int i = da; i < a; i++) {
+			list.add(evento(i));
+		}
+		return list;
+	}
+}
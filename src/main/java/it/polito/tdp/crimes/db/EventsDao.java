@@ -5,14 +5,64 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.javadocmd.simplelatlng.LatLng;
 
 import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.Granularita;
 
 
 
-public class EventsDao {
+public class EventsDao implements SorgenteEventi {
+	
+	// Colonne lette dai metodi in streaming: solo quelle usate da grafo e simulazione
+	private static final String COLONNE_STREAMING = "incident_id, offense_category_id, reported_date, geo_lon, geo_lat, "
+			+ "district_id, precinct_id, neighborhood_id";
+	
+	// Query filtrate per intervallo di reported_date, condivise con EventsSchema che ne controlla il piano
+	static final String SQL_EVENTI_GIORNO = "SELECT * "
+			+ "FROM EVENTS "
+			+ "WHERE reported_date >= ? AND reported_date < ?" ;
+	static final String SQL_LONG_MEDIA = "SELECT AVG(e1.geo_lon) AS lon "
+			+ "FROM EVENTS AS e1 "
+			+ "WHERE e1.reported_date >= ? AND e1.reported_date < ? "
+			+ "AND e1.district_id = ?";
+	static final String SQL_LAT_MEDIA = "SELECT AVG(e1.geo_lat) AS lat "
+			+ "FROM EVENTS AS e1 "
+			+ "WHERE e1.reported_date >= ? AND e1.reported_date < ? "
+			+ "AND e1.district_id = ?";
+	static final String SQL_CENTRI_DISTRETTI = "SELECT district_id, AVG(geo_lat) AS lat, AVG(geo_lon) AS lon "
+			+ "FROM EVENTS "
+			+ "WHERE reported_date >= ? AND reported_date < ? AND district_id IS NOT NULL "
+			+ "GROUP BY district_id";
+	static final String SQL_DISTRETTO_MIN = "SELECT district_id "
+			+ "FROM EVENTS "
+			+ "WHERE reported_date >= ? AND reported_date < ? AND district_id IS NOT NULL "
+			+ "GROUP BY district_id "
+			+ "ORDER BY COUNT(*) ASC "
+			+ "LIMIT 1";
+	
+	private int fetchSize = 1000;
+	
+	/**
+	 * Numero di righe che il driver trasferisce per volta nei metodi in streaming
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+	
+	public int getFetchSize() {
+		return fetchSize;
+	}
 	
 	public List<Event> listAllEvents(){
 		String sql = "SELECT * FROM events" ;
@@ -57,6 +107,83 @@ public class EventsDao {
 		}
 	}
 	
+	/**
+	 * Scorre tutti gli eventi con un cursore in sola lettura e in avanti, passandoli uno alla volta al consumer:
+	 * il driver non carica l'intero risultato in memoria. Sono lette solo le colonne usate da grafo e
+	 * simulazione (vedi COLONNE_STREAMING), gli altri campi dell'Event sono null.
+	 * @return il numero di eventi letti, oppure -1 in caso di errore
+	 */
+	public long forEachEvent(Consumer<Event> consumer) {
+		String sql = "SELECT " + COLONNE_STREAMING + " "
+				+ "FROM EVENTS" ;
+		// La connessione va chiusa anche se il consumer o la lettura di una riga lanciano un'eccezione
+		try (Connection conn = DBConnect.getConnection()) {
+			PreparedStatement st = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY) ;
+			st.setFetchSize(fetchSize);
+			
+			return scorri(st.executeQuery(), consumer);
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return -1 ;
+		}
+	}
+	
+	/**
+	 * Come {@link #forEachEvent(Consumer)}, limitato agli eventi con reported_date nell'intervallo [da, a)
+	 * e in ordine di reported_date
+	 */
+	public long forEachEventByDate(LocalDate da, LocalDate a, Consumer<Event> consumer) {
+		String sql = "SELECT " + COLONNE_STREAMING + " "
+				+ "FROM EVENTS "
+				+ "WHERE reported_date >= ? AND reported_date < ? "
+				+ "ORDER BY reported_date" ;
+		try (Connection conn = DBConnect.getConnection()) {
+			PreparedStatement st = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY) ;
+			st.setFetchSize(fetchSize);
+			st.setTimestamp(1, Timestamp.valueOf(da.atStartOfDay()));
+			st.setTimestamp(2, Timestamp.valueOf(a.atStartOfDay()));
+			
+			return scorri(st.executeQuery(), consumer);
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return -1 ;
+		}
+	}
+	
+	private static long scorri(ResultSet res, Consumer<Event> consumer) throws SQLException {
+		long n = 0;
+		while(res.next()) {
+			consumer.accept(new Event(res.getLong("incident_id"),
+					null,
+					null,
+					null,
+					res.getString("offense_category_id"),
+					res.getTimestamp("reported_date").toLocalDateTime(),
+					null,
+					res.getDouble("geo_lon"),
+					res.getDouble("geo_lat"),
+					intero(res, "district_id"),
+					intero(res, "precinct_id"),
+					res.getString("neighborhood_id"),
+					null,
+					null));
+			n++;
+		}
+		return n;
+	}
+	
+	/**
+	 * Valore intero della colonna, null se è NULL (getInt restituirebbe 0)
+	 */
+	static Integer intero(ResultSet res, String colonna) throws SQLException {
+		int v = res.getInt(colonna);
+		return res.wasNull() ? null : Integer.valueOf(v);
+	}
+	
 	public List<Integer> anniCrimes() {
 		String sql = "SELECT distinct YEAR(reported_date) AS anno "
 				+ "FROM EVENTS "
@@ -143,7 +270,8 @@ public class EventsDao {
 	
 	public List<Integer> getVertici() {
 		String sql = "SELECT distinct district_id as di "
-				+ "FROM EVENTS";
+				+ "FROM EVENTS "
+				+ "WHERE district_id IS NOT NULL";
 		
 		try {
 			Connection conn = DBConnect.getConnection() ;
@@ -169,16 +297,14 @@ public class EventsDao {
 	}
 	
 	public Double longMedia(int vertice, int anno) {
-		String sql = "SELECT AVG(e1.geo_lon) AS lon "
-				+ "FROM EVENTS AS e1 "
-				+ "WHERE YEAR(e1.reported_date) = ? "
-				+ "AND e1.district_id = ?";
+		String sql = SQL_LONG_MEDIA;
 		try {
 			Connection conn = DBConnect.getConnection() ;
 
 			PreparedStatement st = conn.prepareStatement(sql) ;
-			st.setInt(1, anno);
-			st.setInt(2, vertice);
+			st.setTimestamp(1, inizioAnno(anno));
+			st.setTimestamp(2, inizioAnno(anno+1));
+			st.setInt(3, vertice);
 			
 			Double result = 0.0;
 			
@@ -199,16 +325,14 @@ public class EventsDao {
 	}
 
 	public Double latMedia(int vertice, int anno) {
-		String sql = "SELECT AVG(e1.geo_lat) AS lat "
-				+ "FROM EVENTS AS e1 "
-				+ "WHERE YEAR(e1.reported_date) = ? "
-				+ "AND e1.district_id = ?";
+		String sql = SQL_LAT_MEDIA;
 		try {
 			Connection conn = DBConnect.getConnection() ;
 
 			PreparedStatement st = conn.prepareStatement(sql) ;
-			st.setInt(1, anno);
-			st.setInt(2, vertice);
+			st.setTimestamp(1, inizioAnno(anno));
+			st.setTimestamp(2, inizioAnno(anno+1));
+			st.setInt(3, vertice);
 			
 			Double result = 0.0;
 			
@@ -228,18 +352,180 @@ public class EventsDao {
 		}
 	}
 
-	public Integer getDistrettoMin(Integer anno) {
-		String sql = "SELECT district_id "
+	/**
+	 * Calcola in un'unica query il centro (latitudine e longitudine medie) di tutti i distretti
+	 * per l'anno indicato, evitando di interrogare il DB separatamente per ogni distretto.
+	 * I distretti senza eventi nell'anno non compaiono nella mappa.
+	 */
+	public Map<Integer, LatLng> centriDistretti(int anno) {
+		String sql = SQL_CENTRI_DISTRETTI;
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			PreparedStatement st = conn.prepareStatement(sql) ;
+			st.setTimestamp(1, inizioAnno(anno));
+			st.setTimestamp(2, inizioAnno(anno+1));
+			
+			Map<Integer, LatLng> result = new HashMap<>();
+			
+			ResultSet res = st.executeQuery() ;
+			
+			while(res.next()) {
+				result.put(res.getInt("district_id"), new LatLng(res.getDouble("lat"), res.getDouble("lon")));
+			}
+			
+			conn.close();
+			return result ;
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null ;
+		}
+	}
+
+	/**
+	 * Valori distinti della colonna che identifica le zone alla granularità indicata
+	 */
+	public List<String> getZone(Granularita granularita) {
+		String sql = "SELECT DISTINCT " + granularita.getColonna() + " AS zona "
+				+ "FROM EVENTS "
+				+ "WHERE " + granularita.getColonna() + " IS NOT NULL";
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			PreparedStatement st = conn.prepareStatement(sql) ;
+			
+			List<String> list = new ArrayList<>() ;
+			
+			ResultSet res = st.executeQuery() ;
+			
+			while(res.next()) {
+				list.add(res.getString("zona"));
+			}
+			
+			conn.close();
+			return list ;
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null ;
+		}
+	}
+	
+	/**
+	 * Come {@link #centriDistretti(int)} per le zone alla granularità indicata, identificate dal valore
+	 * della loro colonna
+	 */
+	public Map<String, LatLng> centriZone(Granularita granularita, int anno) {
+		String sql = "SELECT " + granularita.getColonna() + " AS zona, AVG(geo_lat) AS lat, AVG(geo_lon) AS lon "
 				+ "FROM EVENTS "
-				+ "WHERE YEAR(reported_date) = ? "
-				+ "GROUP BY district_id "
+				+ "WHERE reported_date >= ? AND reported_date < ? AND " + granularita.getColonna() + " IS NOT NULL "
+				+ "GROUP BY " + granularita.getColonna();
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			PreparedStatement st = conn.prepareStatement(sql) ;
+			st.setTimestamp(1, inizioAnno(anno));
+			st.setTimestamp(2, inizioAnno(anno+1));
+			
+			Map<String, LatLng> result = new HashMap<>();
+			
+			ResultSet res = st.executeQuery() ;
+			
+			while(res.next()) {
+				result.put(res.getString("zona"), new LatLng(res.getDouble("lat"), res.getDouble("lon")));
+			}
+			
+			conn.close();
+			return result ;
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null ;
+		}
+	}
+	
+	/**
+	 * Somme delle coordinate e numero di eventi di ogni zona nell'anno, per aggiornare i centri delle zone
+	 * man mano che arrivano nuovi eventi
+	 * @return valore della colonna della zona -> {somma latitudini, somma longitudini, numero di eventi}
+	 */
+	public Map<String, double[]> sommeZone(Granularita granularita, int anno) {
+		String sql = "SELECT " + granularita.getColonna() + " AS zona, SUM(geo_lat) AS lat, SUM(geo_lon) AS lon, COUNT(*) AS eventi "
+				+ "FROM EVENTS "
+				+ "WHERE reported_date >= ? AND reported_date < ? AND " + granularita.getColonna() + " IS NOT NULL "
+				+ "GROUP BY " + granularita.getColonna();
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			PreparedStatement st = conn.prepareStatement(sql) ;
+			st.setTimestamp(1, inizioAnno(anno));
+			st.setTimestamp(2, inizioAnno(anno+1));
+			
+			Map<String, double[]> result = new HashMap<>();
+			
+			ResultSet res = st.executeQuery() ;
+			
+			while(res.next()) {
+				result.put(res.getString("zona"), new double[] {res.getDouble("lat"), res.getDouble("lon"), res.getLong("eventi")});
+			}
+			
+			conn.close();
+			return result ;
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null ;
+		}
+	}
+	
+	/**
+	 * Come {@link #getDistrettoMin(Integer)} per le zone alla granularità indicata
+	 */
+	public String getZonaMin(Granularita granularita, Integer anno) {
+		String sql = "SELECT " + granularita.getColonna() + " AS zona "
+				+ "FROM EVENTS "
+				+ "WHERE reported_date >= ? AND reported_date < ? AND " + granularita.getColonna() + " IS NOT NULL "
+				+ "GROUP BY " + granularita.getColonna() + " "
 				+ "ORDER BY COUNT(*) ASC "
 				+ "LIMIT 1";
 		try {
 			Connection conn = DBConnect.getConnection() ;
 
 			PreparedStatement st = conn.prepareStatement(sql) ;
-			st.setInt(1, anno);
+			st.setTimestamp(1, inizioAnno(anno));
+			st.setTimestamp(2, inizioAnno(anno+1));
+			
+			String result = null;
+			
+			ResultSet res = st.executeQuery() ;
+			
+			while(res.next()) {
+				result = res.getString("zona");
+			}
+			
+			conn.close();
+			return result ;
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null ;
+		}
+	}
+	
+	public Integer getDistrettoMin(Integer anno) {
+		String sql = SQL_DISTRETTO_MIN;
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			PreparedStatement st = conn.prepareStatement(sql) ;
+			st.setTimestamp(1, inizioAnno(anno));
+			st.setTimestamp(2, inizioAnno(anno+1));
 			
 			Integer result = 0;
 			
@@ -260,18 +546,20 @@ public class EventsDao {
 	}
 	
 	public List<Event> listAllEventsByDate(Integer anno, Integer mese, Integer giorno){
-		String sql = "SELECT * "
-				+ "FROM EVENTS "
-				+ "WHERE YEAR(reported_date) = ? "
-				+ "AND MONTH(reported_date) = ? "
-				+ "AND DAY(reported_date) = ?" ;
+		String sql = SQL_EVENTI_GIORNO;
+		LocalDate giornata;
+		try {
+			giornata = LocalDate.of(anno, mese, giorno);
+		} catch (DateTimeException e) {
+			// Una data inesistente non ha eventi
+			return new ArrayList<>();
+		}
 		try {
 			Connection conn = DBConnect.getConnection() ;
 
 			PreparedStatement st = conn.prepareStatement(sql) ;
-			st.setInt(1, anno);
-			st.setInt(2, mese);
-			st.setInt(3, giorno);
+			st.setTimestamp(1, Timestamp.valueOf(giornata.atStartOfDay()));
+			st.setTimestamp(2, Timestamp.valueOf(giornata.plusDays(1).atStartOfDay()));
 			List<Event> list = new ArrayList<>() ;
 			
 			ResultSet res = st.executeQuery() ;
@@ -307,4 +595,99 @@ public class EventsDao {
 			return null ;
 		}
 	}
+	
+	/**
+	 * Firma del contenuto della tabella, usata per riconoscere i dati cambiati (ad esempio dalla cache dei grafi)
+	 * @return {numero di righe, reported_date massima in secondi dall'epoca letta come UTC, Long.MIN_VALUE se la tabella è vuota}
+	 */
+	public long[] firmaDati() {
+		String sql = "SELECT COUNT(*) AS righe, MAX(reported_date) AS ultima "
+				+ "FROM EVENTS";
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			PreparedStatement st = conn.prepareStatement(sql) ;
+			
+			long[] result = null;
+			
+			ResultSet res = st.executeQuery() ;
+			
+			if(res.next()) {
+				Timestamp ultima = res.getTimestamp("ultima");
+				result = new long[] {res.getLong("righe"),
+						ultima == null ? Long.MIN_VALUE : ultima.toLocalDateTime().toEpochSecond(ZoneOffset.UTC)};
+			}
+			
+			conn.close();
+			return result ;
+
+		} catch (SQLException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null ;
+		}
+	}
+	
+	/**
+	 * Inserisce gli eventi con un'unica transazione e un batch JDBC (il driver lo invia come un solo
+	 * INSERT multiriga, vedi DBConnect)
+	 * @return il numero di eventi inseriti, oppure -1 in caso di errore (nessun evento inserito)
+	 */
+	public int inserisciEventi(List<Event> eventi) {
+		String sql = "INSERT INTO events (incident_id, offense_code, offense_code_extension, offense_type_id, "
+				+ "offense_category_id, reported_date, incident_address, geo_lon, geo_lat, district_id, precinct_id, "
+				+ "neighborhood_id, is_crime, is_traffic) "
+				+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+		Connection conn = DBConnect.getConnection() ;
+		try {
+			conn.setAutoCommit(false);
+			PreparedStatement st = conn.prepareStatement(sql) ;
+			for(Event e : eventi) {
+				st.setObject(1, e.getIncident_id());
+				st.setObject(2, e.getOffense_code());
+				st.setObject(3, e.getOffense_code_extension());
+				st.setString(4, e.getOffense_type_id());
+				st.setString(5, e.getOffense_category_id());
+				st.setTimestamp(6, Timestamp.valueOf(e.getReported_date()));
+				st.setString(7, e.getIncident_address());
+				st.setDouble(8, e.getGeo_lon());
+				st.setDouble(9, e.getGeo_lat());
+				st.setObject(10, e.getDistrict_id());
+				st.setObject(11, e.getPrecinct_id());
+				st.setString(12, e.getNeighborhood_id());
+				st.setObject(13, e.getIs_crime());
+				st.setObject(14, e.getIs_traffic());
+				st.addBatch();
+			}
+			st.executeBatch();
+			conn.commit();
+			return eventi.size();
+
+		} catch (SQLException e) {
+			e.printStackTrace();
+			try {
+				conn.rollback();
+			} catch (SQLException e2) {
+				e2.printStackTrace();
+			}
+			return -1 ;
+		} finally {
+			try {
+				// La connessione torna al pool: va rimessa come la usano gli altri metodi
+				conn.setAutoCommit(true);
+				conn.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Inizio (incluso) dell'anno indicato. I filtri per anno e per giorno sono scritti come intervalli semiaperti
+	 * su reported_date (reported_date >= inizio AND reported_date < fine) invece che con YEAR()/MONTH()/DAY(),
+	 * così il DB può usare gli indici creati da {@link EventsSchema#creaIndici()}
+	 */
+	private static Timestamp inizioAnno(int anno) {
+		return Timestamp.valueOf(LocalDate.of(anno, 1, 1).atStartOfDay());
+	}
 }
@@ -0,0 +1,139 @@
+package it.polito.tdp.crimes.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manutenzione dello schema della tabella EVENTS: crea gli indici usati dalle query di {@link EventsDao}
+ * e permette di controllarne il piano di esecuzione
+ */
+public class EventsSchema {
+
+	// Filtri per intervallo di date (listAllEventsByDate) e per distretto + intervallo di date
+	// (latMedia, longMedia, centriDistretti e getDistrettoMin raggruppano per distretto)
+	private static final String[] INDICI = {
+			"CREATE INDEX IF NOT EXISTS idx_events_reported_date ON EVENTS (reported_date)",
+			"CREATE INDEX IF NOT EXISTS idx_events_district_date ON EVENTS (district_id, reported_date)"
+	};
+
+	/**
+	 * Crea gli indici e controlla sul DB locale che le query per intervallo di date di {@link EventsDao} li usino
+	 */
+	public static void main(String[] args) {
+		EventsSchema schema = new EventsSchema();
+		schema.creaIndici();
+		Timestamp da = Timestamp.valueOf(LocalDateTime.of(2017, 1, 1, 0, 0));
+		Timestamp a = Timestamp.valueOf(LocalDateTime.of(2017, 1, 2, 0, 0));
+		System.out.println("listAllEventsByDate usa idx_events_reported_date: "
+				+ schema.usaIndice(EventsDao.SQL_EVENTI_GIORNO, "idx_events_reported_date", da, a));
+		System.out.println("latMedia usa idx_events_district_date: "
+				+ schema.usaIndice(EventsDao.SQL_LAT_MEDIA, "idx_events_district_date", da, a, 1));
+		System.out.println("longMedia usa idx_events_district_date: "
+				+ schema.usaIndice(EventsDao.SQL_LONG_MEDIA, "idx_events_district_date", da, a, 1));
+		// Raggruppando per distretto l'ottimizzatore può scegliere uno dei due indici: stampo il piano intero
+		for(String sql : new String[] { EventsDao.SQL_CENTRI_DISTRETTI, EventsDao.SQL_DISTRETTO_MIN }) {
+			System.out.println(sql);
+			List<String> piano = schema.piano(sql, da, a);
+			if(piano != null) {
+				for(String riga : piano) {
+					System.out.println(riga);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Crea gli indici se non esistono già (richiede MariaDB 10.1.4 o successivo)
+	 * @return true se tutte le istruzioni sono andate a buon fine
+	 */
+	public boolean creaIndici() {
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			Statement st = conn.createStatement() ;
+			for(String sql : INDICI) {
+				st.execute(sql);
+			}
+
+			conn.close();
+			return true ;
+
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return false ;
+		}
+	}
+
+	/**
+	 * Restituisce il risultato di EXPLAIN per la query indicata, una riga per tabella del piano
+	 * (colonne separate da tabulazione, la prima riga contiene i nomi delle colonne)
+	 */
+	public List<String> piano(String sql, Object... parametri) {
+		try {
+			Connection conn = DBConnect.getConnection() ;
+
+			PreparedStatement st = conn.prepareStatement("EXPLAIN " + sql) ;
+			for(int i = 0; i < parametri.length; i++) {
+				st.setObject(i+1, parametri[i]);
+			}
+
+			List<String> list = new ArrayList<>() ;
+
+			ResultSet res = st.executeQuery() ;
+			ResultSetMetaData meta = res.getMetaData();
+
+			StringBuilder intestazione = new StringBuilder();
+			for(int c = 1; c <= meta.getColumnCount(); c++) {
+				intestazione.append(c > 1 ? "\t" : "").append(meta.getColumnLabel(c));
+			}
+			list.add(intestazione.toString());
+
+			while(res.next()) {
+				StringBuilder riga = new StringBuilder();
+				for(int c = 1; c <= meta.getColumnCount(); c++) {
+					riga.append(c > 1 ? "\t" : "").append(res.getString(c));
+				}
+				list.add(riga.toString());
+			}
+
+			conn.close();
+			return list ;
+
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return null ;
+		}
+	}
+
+	/**
+	 * @return true se il piano usa l'indice indicato (colonna "key" di EXPLAIN)
+	 */
+	public boolean usaIndice(String sql, String indice, Object... parametri) {
+		List<String> piano = piano(sql, parametri);
+		if(piano == null || piano.isEmpty()) {
+			return false;
+		}
+		String[] colonne = piano.get(0).split("\t");
+		int key = -1;
+		for(int c = 0; c < colonne.length; c++) {
+			if(colonne[c].equalsIgnoreCase("key")) {
+				key = c;
+			}
+		}
+		for(String riga : piano.subList(1, piano.size())) {
+			String[] valori = riga.split("\t");
+			if(key >= 0 && key < valori.length && indice.equalsIgnoreCase(valori[key])) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
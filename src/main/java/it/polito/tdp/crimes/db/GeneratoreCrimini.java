@@ -0,0 +1,432 @@
+package it.polito.tdp.crimes.db;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.Granularita;
+
+/**
+ * Sorgente di crimini sintetici per i test di carico del simulatore. Gli arrivi sono un processo di Poisson
+ * con intensità costante a tratti: un tasso orario per ogni ora di ogni giorno della settimana, moltiplicato
+ * per un fattore di scala (ad esempio 10 per simulare dieci volte il volume di Denver).
+ * Ogni crimine viene assegnato a una zona (combinazione di distretto, precinto e quartiere) e a una categoria
+ * estratte con le frequenze osservate; la posizione è una gaussiana attorno al centro della zona.
+ * <p>
+ * Il profilo può essere stimato dallo storico con {@link #stima(SorgenteEventi, LocalDate, LocalDate, long)}
+ * oppure costruito uniforme con {@link #uniforme(Map, double, long)}. È una {@link SorgenteEventi}, quindi può
+ * essere passato direttamente al simulatore, e risponde a tutte le interrogazioni dai soli dati generati senza
+ * mai accedere al DB; ogni giorno è generato con un seme derivato dalla data, quindi la stessa giornata produce
+ * sempre gli stessi crimini anche se richiesta più volte.
+ */
+public class GeneratoreCrimini implements SorgenteEventi {
+	private static final DateTimeFormatter FORMATO_DATA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private final double[] tassi = new double[7 * 24]; // crimini per ora, indice (giorno settimana - 1) * 24 + ora
+
+	// Zone: distretto, precinto e quartiere con centro, dispersione e peso cumulato
+	private final List<Integer> zonaDistretto = new ArrayList<>();
+	private final List<Integer> zonaPrecinto = new ArrayList<>();
+	private final List<String> zonaQuartiere = new ArrayList<>();
+	private double[] zonaLat;
+	private double[] zonaLon;
+	private double[] zonaDevLat;
+	private double[] zonaDevLon;
+	private double[] zonaCumulato;
+
+	private final List<String> categorie = new ArrayList<>();
+	private double[] categoriaCumulato;
+
+	private double scala = 1.0;
+	private long seme;
+
+	private GeneratoreCrimini(long seme) {
+		this.seme = seme;
+	}
+
+	/**
+	 * Stima il profilo dagli eventi con reported_date in [da, a) letti in streaming dalla sorgente indicata:
+	 * il tasso di ogni ora della settimana è il numero medio di crimini in quell'ora
+	 */
+	public static GeneratoreCrimini stima(SorgenteEventi dao, LocalDate da, LocalDate a, long seme) {
+		final GeneratoreCrimini g = new GeneratoreCrimini(seme);
+		final Map<String, double[]> zone = new HashMap<>(); // zona -> {conteggio, somma lat, somma lon, somma lat^2, somma lon^2}
+		final Map<String, Event> esempi = new HashMap<>();
+		final Map<String, Integer> conteggiCategorie = new TreeMap<>();
+
+		dao.forEachEventByDate(da, a, new Consumer<Event>() {
+			@Override
+			public void accept(Event e) {
+				LocalDateTime d = e.getReported_date();
+				g.tassi[(d.getDayOfWeek().getValue() - 1) * 24 + d.getHour()]++;
+
+				String zona = e.getDistrict_id() + ";" + e.getPrecinct_id() + ";" + e.getNeighborhood_id();
+				double[] s = zone.get(zona);
+				if(s == null) {
+					s = new double[5];
+					zone.put(zona, s);
+					esempi.put(zona, e);
+				}
+				s[0]++;
+				s[1] += e.getGeo_lat();
+				s[2] += e.getGeo_lon();
+				s[3] += e.getGeo_lat() * e.getGeo_lat();
+				s[4] += e.getGeo_lon() * e.getGeo_lon();
+
+				String categoria = e.getOffense_category_id();
+				Integer c = conteggiCategorie.get(categoria);
+				conteggiCategorie.put(categoria, c == null ? 1 : c + 1);
+			}
+		});
+
+		// Divido ogni ora per il numero di volte in cui il suo giorno della settimana compare nel periodo
+		int[] occorrenze = new int[7];
+		for(LocalDate giorno = da; giorno.isBefore(a); giorno = giorno.plusDays(1)) {
+			occorrenze[giorno.getDayOfWeek().getValue() - 1]++;
+		}
+		for(int i = 0; i < g.tassi.length; i++) {
+			int n = occorrenze[i / 24];
+			g.tassi[i] = n == 0 ? 0.0 : g.tassi[i] / n;
+		}
+
+		int n = zone.size();
+		g.zonaLat = new double[n];
+		g.zonaLon = new double[n];
+		g.zonaDevLat = new double[n];
+		g.zonaDevLon = new double[n];
+		g.zonaCumulato = new double[n];
+		double cumulato = 0.0;
+		int i = 0;
+		for(Map.Entry<String, double[]> zona : new TreeMap<>(zone).entrySet()) {
+			Event e = esempi.get(zona.getKey());
+			double[] s = zona.getValue();
+			g.zonaDistretto.add(e.getDistrict_id());
+			g.zonaPrecinto.add(e.getPrecinct_id());
+			g.zonaQuartiere.add(e.getNeighborhood_id());
+			g.zonaLat[i] = s[1] / s[0];
+			g.zonaLon[i] = s[2] / s[0];
+			g.zonaDevLat[i] = Math.sqrt(Math.max(s[3] / s[0] - g.zonaLat[i] * g.zonaLat[i], 0.0));
+			g.zonaDevLon[i] = Math.sqrt(Math.max(s[4] / s[0] - g.zonaLon[i] * g.zonaLon[i], 0.0));
+			cumulato += s[0];
+			g.zonaCumulato[i] = cumulato;
+			i++;
+		}
+
+		g.categoriaCumulato = new double[conteggiCategorie.size()];
+		cumulato = 0.0;
+		i = 0;
+		for(Map.Entry<String, Integer> c : conteggiCategorie.entrySet()) {
+			g.categorie.add(c.getKey());
+			cumulato += c.getValue();
+			g.categoriaCumulato[i++] = cumulato;
+		}
+		return g;
+	}
+
+	/**
+	 * Profilo piatto: criminiAlGiorno crimini al giorno distribuiti uniformemente sulle ore e sui distretti
+	 * indicati, posizionati esattamente nei centri, tre quarti "larceny" e un quarto "all_other_crimes"
+	 */
+	public static GeneratoreCrimini uniforme(Map<Integer, LatLng> centri, double criminiAlGiorno, long seme) {
+		GeneratoreCrimini g = new GeneratoreCrimini(seme);
+		for(int i = 0; i < g.tassi.length; i++) {
+			g.tassi[i] = criminiAlGiorno / 24;
+		}
+
+		int n = centri.size();
+		g.zonaLat = new double[n];
+		g.zonaLon = new double[n];
+		g.zonaDevLat = new double[n];
+		g.zonaDevLon = new double[n];
+		g.zonaCumulato = new double[n];
+		int i = 0;
+		for(Map.Entry<Integer, LatLng> c : new TreeMap<>(centri).entrySet()) {
+			g.zonaDistretto.add(c.getKey());
+			g.zonaPrecinto.add(null);
+			g.zonaQuartiere.add(null);
+			g.zonaLat[i] = c.getValue().getLatitude();
+			g.zonaLon[i] = c.getValue().getLongitude();
+			g.zonaCumulato[i] = i + 1;
+			i++;
+		}
+
+		g.categorie.add("all_other_crimes");
+		g.categorie.add("larceny");
+		g.categoriaCumulato = new double[] {1, 4};
+		return g;
+	}
+
+	/**
+	 * Fattore moltiplicativo dei tassi di arrivo (1 = volume stimato)
+	 */
+	public void setScala(double scala) {
+		if(scala < 0) {
+			throw new IllegalArgumentException("Scala non valida: " + scala);
+		}
+		this.scala = scala;
+	}
+
+	public double getScala() {
+		return scala;
+	}
+
+	public void setSeme(long seme) {
+		this.seme = seme;
+	}
+
+	/**
+	 * Crimini attesi in media all'ora indicata (già moltiplicati per la scala)
+	 */
+	public double getTasso(LocalDateTime ora) {
+		return tassi[(ora.getDayOfWeek().getValue() - 1) * 24 + ora.getHour()] * scala;
+	}
+
+	/**
+	 * Numero medio di crimini generati in [da, a)
+	 */
+	public double getCriminiAttesi(LocalDate da, LocalDate a) {
+		double totale = 0.0;
+		for(LocalDate giorno = da; giorno.isBefore(a); giorno = giorno.plusDays(1)) {
+			int base = (giorno.getDayOfWeek().getValue() - 1) * 24;
+			for(int h = 0; h < 24; h++) {
+				totale += tassi[base + h];
+			}
+		}
+		return totale * scala;
+	}
+
+	private long generaGiorno(LocalDate giorno, Consumer<Event> consumer) {
+		if(zonaCumulato.length == 0 || categoriaCumulato.length == 0) {
+			return 0;
+		}
+		Random random = new Random(seme * 0x9E3779B97F4A7C15L + giorno.toEpochDay());
+		LocalDateTime inizio = giorno.atStartOfDay();
+		int base = (giorno.getDayOfWeek().getValue() - 1) * 24;
+		long progressivo = 0;
+
+		for(int h = 0; h < 24; h++) {
+			double tasso = tassi[base + h] * scala / 3600.0; // crimini al secondo
+			if(tasso <= 0) {
+				continue;
+			}
+			// Intertempi esponenziali: con tasso costante nell'ora il processo riparte senza memoria all'ora successiva
+			double t = -Math.log(1.0 - random.nextDouble()) / tasso;
+			while(t < 3600.0) {
+				int zona = estrai(zonaCumulato, random);
+				String categoria = categorie.get(estrai(categoriaCumulato, random));
+				int traffico = categoria.equals("traffic_accident") ? 1 : 0;
+				consumer.accept(new Event(giorno.toEpochDay() * 100_000_000L + progressivo++,
+						0,
+						0,
+						categoria,
+						categoria,
+						inizio.plusSeconds(h * 3600L + (long) t),
+						null,
+						zonaLon[zona] + random.nextGaussian() * zonaDevLon[zona],
+						zonaLat[zona] + random.nextGaussian() * zonaDevLat[zona],
+						zonaDistretto.get(zona),
+						zonaPrecinto.get(zona),
+						zonaQuartiere.get(zona),
+						1 - traffico,
+						traffico));
+				t += -Math.log(1.0 - random.nextDouble()) / tasso;
+			}
+		}
+		return progressivo;
+	}
+
+	private static int estrai(double[] cumulato, Random random) {
+		double u = random.nextDouble() * cumulato[cumulato.length - 1];
+		int lo = 0;
+		int hi = cumulato.length - 1;
+		while(lo < hi) {
+			int m = (lo + hi) >>> 1;
+			if(cumulato[m] <= u) {
+				lo = m + 1;
+			} else {
+				hi = m;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Scrive i crimini generati in [da, a) in un file CSV con le colonne della tabella EVENTS
+	 * @return numero di crimini scritti
+	 */
+	public long scrivi(Path file, LocalDate da, LocalDate a) throws IOException {
+		try(final Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			out.write("incident_id,offense_code,offense_code_extension,offense_type_id,offense_category_id,"
+					+ "reported_date,incident_address,geo_lon,geo_lat,district_id,precinct_id,neighborhood_id,"
+					+ "is_crime,is_traffic\n");
+			final IOException[] errore = new IOException[1];
+			long n = forEachEventByDate(da, a, new Consumer<Event>() {
+				@Override
+				public void accept(Event e) {
+					if(errore[0] != null) {
+						return;
+					}
+					try {
+						out.write(e.getIncident_id() + "," + e.getOffense_code() + "," + e.getOffense_code_extension() + ","
+								+ e.getOffense_type_id() + "," + e.getOffense_category_id() + ","
+								+ FORMATO_DATA.format(e.getReported_date()) + ",," + e.getGeo_lon() + "," + e.getGeo_lat() + ","
+								+ e.getDistrict_id() + "," + (e.getPrecinct_id() == null ? "" : e.getPrecinct_id()) + ","
+								+ (e.getNeighborhood_id() == null ? "" : e.getNeighborhood_id()) + ","
+								+ e.getIs_crime() + "," + e.getIs_traffic() + "\n");
+					} catch (IOException ex) {
+						errore[0] = ex;
+					}
+				}
+			});
+			if(errore[0] != null) {
+				throw errore[0];
+			}
+			return n;
+		}
+	}
+
+	@Override
+	public long forEachEventByDate(LocalDate da, LocalDate a, Consumer<Event> consumer) {
+		long n = 0;
+		for(LocalDate giorno = da; giorno.isBefore(a); giorno = giorno.plusDays(1)) {
+			n += generaGiorno(giorno, consumer);
+		}
+		return n;
+	}
+
+	@Override
+	public List<Event> listAllEventsByDate(Integer anno, Integer mese, Integer giorno) {
+		final List<Event> list = new ArrayList<>();
+		LocalDate giornata;
+		try {
+			giornata = LocalDate.of(anno, mese, giorno);
+		} catch (DateTimeException e) {
+			return list;
+		}
+		generaGiorno(giornata, new Consumer<Event>() {
+			@Override
+			public void accept(Event e) {
+				list.add(e);
+			}
+		});
+		return list;
+	}
+
+	@Override
+	public List<Integer> getVertici() {
+		List<Integer> list = new ArrayList<>();
+		for(String d : pesiZone(Granularita.DISTRETTO).keySet()) {
+			list.add(Integer.parseInt(d));
+		}
+		return list;
+	}
+
+	@Override
+	public List<String> getZone(Granularita granularita) {
+		return new ArrayList<>(pesiZone(granularita).keySet());
+	}
+
+	@Override
+	public Map<Integer, LatLng> centriDistretti(int anno) {
+		Map<Integer, LatLng> result = new HashMap<>();
+		for(Map.Entry<String, LatLng> e : centriZone(Granularita.DISTRETTO, anno).entrySet()) {
+			result.put(Integer.parseInt(e.getKey()), e.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * Centri delle zone pesati con la frequenza delle zone del generatore (uguali per tutti gli anni)
+	 */
+	@Override
+	public Map<String, LatLng> centriZone(Granularita granularita, int anno) {
+		Map<String, double[]> somme = new TreeMap<>(); // zona -> {somma pesata lat, somma pesata lon, peso}
+		for(int i = 0; i < zonaLat.length; i++) {
+			String z = valoreZona(granularita, i);
+			if(z == null) {
+				continue;
+			}
+			double peso = peso(i);
+			double[] s = somme.get(z);
+			if(s == null) {
+				s = new double[3];
+				somme.put(z, s);
+			}
+			s[0] += zonaLat[i] * peso;
+			s[1] += zonaLon[i] * peso;
+			s[2] += peso;
+		}
+
+		Map<String, LatLng> result = new HashMap<>();
+		for(Map.Entry<String, double[]> e : somme.entrySet()) {
+			double[] s = e.getValue();
+			result.put(e.getKey(), new LatLng(s[0] / s[2], s[1] / s[2]));
+		}
+		return result;
+	}
+
+	/**
+	 * Distretto con il minor numero atteso di crimini (uguale per tutti gli anni)
+	 */
+	@Override
+	public Integer getDistrettoMin(Integer anno) {
+		String min = getZonaMin(Granularita.DISTRETTO, anno);
+		return min == null ? 0 : Integer.parseInt(min);
+	}
+
+	@Override
+	public String getZonaMin(Granularita granularita, Integer anno) {
+		String result = null;
+		double min = Double.MAX_VALUE;
+		for(Map.Entry<String, Double> e : pesiZone(granularita).entrySet()) {
+			if(e.getValue() < min) {
+				min = e.getValue();
+				result = e.getKey();
+			}
+		}
+		return result;
+	}
+
+	private double peso(int zona) {
+		return zonaCumulato[zona] - (zona == 0 ? 0.0 : zonaCumulato[zona-1]);
+	}
+
+	private String valoreZona(Granularita granularita, int zona) {
+		switch(granularita) {
+			case DISTRETTO:
+				return zonaDistretto.get(zona) == null ? null : String.valueOf(zonaDistretto.get(zona));
+			case PRECINTO:
+				return zonaPrecinto.get(zona) == null ? null : String.valueOf(zonaPrecinto.get(zona));
+			default:
+				return zonaQuartiere.get(zona);
+		}
+	}
+
+	private Map<String, Double> pesiZone(Granularita granularita) {
+		Map<String, Double> pesi = new TreeMap<>();
+		for(int i = 0; i < zonaCumulato.length; i++) {
+			String z = valoreZona(granularita, i);
+			if(z != null) {
+				Double p = pesi.get(z);
+				pesi.put(z, p == null ? peso(i) : p + peso(i));
+			}
+		}
+		return pesi;
+	}
+}
@@ -0,0 +1,519 @@
+package it.polito.tdp.crimes.db;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import it.polito.tdp.crimes.model.Event;
+
+/**
+ * Ingestione continua di eventi da un file che cresce (come tail -f) o da un socket locale, una riga CSV per
+ * evento nel formato di {@link GeneratoreCrimini#scrivi(Path, java.time.LocalDate, java.time.LocalDate)}.
+ * <p>
+ * Tre thread collegati da code limitate: il lettore legge le righe, il parser le trasforma in Event (e nella
+ * riproduzione accelerata li rilascia al ritmo delle loro date), lo scrittore li inserisce nel DB a batch
+ * e li passa ai destinatari (rete, simulatore). Quando una coda è piena lo stadio precedente si ferma:
+ * il lettore smette di leggere il file, o di leggere dal socket lasciando che TCP rallenti chi scrive.
+ * I batch si formano da soli: lo scrittore prende tutti gli eventi in coda, fino alla dimensione massima.
+ */
+public class PipelineIngestione {
+	private static final DateTimeFormatter FORMATO_DATA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static final long PAUSA_TAIL = 200; // ms di attesa quando il file seguito non ha righe nuove
+
+	// Segnalano la fine del flusso agli stadi successivi (confrontati per identità)
+	private static final String FINE_RIGHE = new String("FINE");
+	private static final Event FINE_EVENTI = new Event(null, null, null, null, null, null, null, 0, 0, null, null, null, null, null);
+
+	private final Sorgente sorgente;
+	private EventsDao dao = new EventsDao();
+	private int capacita = 10_000;
+	private int dimensioneBatch = 500;
+	private double velocita = 0; // 0 = senza attese; altrimenti secondi simulati per secondo reale
+	private boolean scriviSuDB = true;
+	private final List<Consumer<List<Event>>> destinatari = new CopyOnWriteArrayList<>();
+
+	private BlockingQueue<String> righe;
+	private BlockingQueue<Event> eventi;
+	private final List<Thread> thread = new ArrayList<>();
+	private final CountDownLatch terminata = new CountDownLatch(1);
+
+	// Metriche
+	private long avvio;
+	private final AtomicLong righeLette = new AtomicLong();
+	private final AtomicLong righeScartate = new AtomicLong();
+	private final AtomicLong eventiInseriti = new AtomicLong();
+	private final AtomicLong eventiPubblicati = new AtomicLong();
+	private final AtomicLong batch = new AtomicLong();
+	private final AtomicLong erroriDB = new AtomicLong();
+
+	private PipelineIngestione(Sorgente sorgente) {
+		this.sorgente = sorgente;
+	}
+
+	/**
+	 * @param segui se true, arrivati in fondo al file si aspettano le righe che vengono aggiunte (come tail -f)
+	 * e la pipeline termina solo con {@link #ferma()}; se false termina alla fine del file
+	 */
+	public static PipelineIngestione daFile(Path file, boolean segui) {
+		return new PipelineIngestione(new SorgenteFile(file, segui));
+	}
+
+	/**
+	 * Accetta connessioni solo da localhost sulla porta indicata; ogni connessione invia righe CSV.
+	 * La pipeline termina con {@link #ferma()}.
+	 */
+	public static PipelineIngestione daSocket(int porta) {
+		return new PipelineIngestione(new SorgenteSocket(porta));
+	}
+
+	public void setDao(EventsDao dao) {
+		this.dao = dao;
+	}
+
+	/**
+	 * Dimensione di ognuna delle due code tra gli stadi (righe ed eventi)
+	 */
+	public void setCapacita(int capacita) {
+		this.capacita = capacita;
+	}
+
+	public void setDimensioneBatch(int dimensioneBatch) {
+		this.dimensioneBatch = dimensioneBatch;
+	}
+
+	/**
+	 * Riproduzione accelerata: gli eventi vengono rilasciati quando il tempo reale trascorso, moltiplicato per
+	 * velocita, raggiunge la distanza della loro reported_date da quella del primo evento (es. 60 = un'ora di
+	 * eventi al minuto). Con 0 (default) gli eventi passano appena letti.
+	 */
+	public void setVelocita(double velocita) {
+		this.velocita = velocita;
+	}
+
+	/**
+	 * Con false gli eventi sono solo passati ai destinatari, ad esempio per le prove what-if su un flusso
+	 * registrato che non devono finire nel DB
+	 */
+	public void setScriviSuDB(boolean scriviSuDB) {
+		this.scriviSuDB = scriviSuDB;
+	}
+
+	/**
+	 * Il destinatario riceve ogni batch dopo l'inserimento nel DB, sul thread dello scrittore: se è lento
+	 * rallenta tutta la pipeline
+	 */
+	public void aggiungiDestinatario(Consumer<List<Event>> destinatario) {
+		destinatari.add(destinatario);
+	}
+
+	public synchronized void avvia() {
+		if(righe != null) {
+			throw new IllegalStateException("Pipeline già avviata");
+		}
+		righe = new ArrayBlockingQueue<>(capacita);
+		eventi = new ArrayBlockingQueue<>(capacita);
+		avvio = System.nanoTime();
+		thread.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				leggi();
+			}
+		}, "ingestione-lettore"));
+		thread.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				interpreta();
+			}
+		}, "ingestione-parser"));
+		thread.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				scrivi();
+			}
+		}, "ingestione-scrittore"));
+		for(Thread t : thread) {
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Interrompe la pipeline: gli eventi ancora in coda vengono persi
+	 */
+	public synchronized void ferma() {
+		sorgente.chiudi();
+		for(Thread t : thread) {
+			t.interrupt();
+		}
+	}
+
+	/**
+	 * Aspetta che la pipeline termini (fine del file non seguito, oppure {@link #ferma()})
+	 * @return false se il tempo è scaduto prima
+	 */
+	public boolean attendi(long tempo, TimeUnit unita) throws InterruptedException {
+		return terminata.await(tempo, unita);
+	}
+
+	private void leggi() {
+		try {
+			sorgente.leggi(righe, righeLette);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			return; // ferma(): gli altri stadi sono interrotti a loro volta
+		}
+		try {
+			righe.put(FINE_RIGHE);
+		} catch (InterruptedException e) {
+			// ferma()
+		}
+	}
+
+	private void interpreta() {
+		long primoEvento = Long.MIN_VALUE; // reported_date del primo evento, in secondi
+		long inizioReale = 0;
+		try {
+			while(true) {
+				String riga = righe.take();
+				if(riga == FINE_RIGHE) {
+					eventi.put(FINE_EVENTI);
+					return;
+				}
+				Event e;
+				try {
+					e = leggiRiga(riga);
+				} catch (IllegalArgumentException | DateTimeParseException ex) {
+					righeScartate.incrementAndGet();
+					continue;
+				}
+				if(e == null) {
+					continue; // intestazione o riga vuota
+				}
+				if(velocita > 0) {
+					long t = e.getReported_date().toEpochSecond(ZoneOffset.UTC);
+					if(primoEvento == Long.MIN_VALUE) {
+						primoEvento = t;
+						inizioReale = System.nanoTime();
+					}
+					long attesa = inizioReale + (long) ((t - primoEvento) * 1e9 / velocita) - System.nanoTime();
+					if(attesa > 0) {
+						TimeUnit.NANOSECONDS.sleep(attesa);
+					}
+				}
+				eventi.put(e);
+			}
+		} catch (InterruptedException ex) {
+			// ferma()
+		}
+	}
+
+	private void scrivi() {
+		List<Event> lotto = new ArrayList<>(dimensioneBatch);
+		try {
+			boolean fine = false;
+			while(!fine) {
+				lotto.clear();
+				lotto.add(eventi.take());
+				eventi.drainTo(lotto, dimensioneBatch - 1);
+				if(lotto.get(lotto.size() - 1) == FINE_EVENTI) {
+					lotto.remove(lotto.size() - 1);
+					fine = true;
+				}
+				if(lotto.isEmpty()) {
+					continue;
+				}
+				if(scriviSuDB) {
+					if(dao.inserisciEventi(lotto) >= 0) {
+						eventiInseriti.addAndGet(lotto.size());
+					} else {
+						erroriDB.incrementAndGet();
+					}
+				}
+				batch.incrementAndGet();
+				// Ogni destinatario riceve una copia: il lotto viene riusato
+				List<Event> copia = new ArrayList<>(lotto);
+				for(Consumer<List<Event>> d : destinatari) {
+					try {
+						d.accept(copia);
+					} catch (RuntimeException ex) {
+						ex.printStackTrace();
+					}
+				}
+				eventiPubblicati.addAndGet(lotto.size());
+			}
+		} catch (InterruptedException ex) {
+			// ferma()
+		} finally {
+			terminata.countDown();
+		}
+	}
+
+	/**
+	 * Interpreta una riga CSV nel formato di GeneratoreCrimini.scrivi (i campi tra virgolette possono
+	 * contenere virgole)
+	 * @return null per l'intestazione e le righe vuote
+	 * @throws IllegalArgumentException se la riga non è valida
+	 */
+	public static Event leggiRiga(String riga) {
+		if(riga.trim().isEmpty() || riga.startsWith("incident_id")) {
+			return null;
+		}
+		List<String> c = campi(riga);
+		if(c.size() != 14) {
+			throw new IllegalArgumentException("Attesi 14 campi: " + riga);
+		}
+		return new Event(Long.parseLong(c.get(0)), intero(c.get(1)), intero(c.get(2)), testo(c.get(3)), testo(c.get(4)),
+				LocalDateTime.parse(c.get(5), FORMATO_DATA), testo(c.get(6)), Double.parseDouble(c.get(7)),
+				Double.parseDouble(c.get(8)), intero(c.get(9)), intero(c.get(10)), testo(c.get(11)),
+				intero(c.get(12)), intero(c.get(13)));
+	}
+
+	private static List<String> campi(String riga) {
+		List<String> campi = new ArrayList<>(14);
+		StringBuilder campo = new StringBuilder();
+		boolean virgolette = false;
+		for(int i = 0; i < riga.length(); i++) {
+			char ch = riga.charAt(i);
+			if(virgolette) {
+				if(ch == '"' && i + 1 < riga.length() && riga.charAt(i + 1) == '"') {
+					campo.append('"');
+					i++;
+				} else if(ch == '"') {
+					virgolette = false;
+				} else {
+					campo.append(ch);
+				}
+			} else if(ch == '"') {
+				virgolette = true;
+			} else if(ch == ',') {
+				campi.add(campo.toString());
+				campo.setLength(0);
+			} else if(ch != '\r') {
+				campo.append(ch);
+			}
+		}
+		campi.add(campo.toString());
+		return campi;
+	}
+
+	private static Integer intero(String s) {
+		return s.isEmpty() || s.equals("null") ? null : Integer.valueOf(s);
+	}
+
+	private static String testo(String s) {
+		return s.isEmpty() || s.equals("null") ? null : s;
+	}
+
+	// Metriche: possono essere lette da qualunque thread mentre la pipeline lavora
+
+	public long getRigheLette() {
+		return righeLette.get();
+	}
+
+	public long getRigheScartate() {
+		return righeScartate.get();
+	}
+
+	public long getEventiInseriti() {
+		return eventiInseriti.get();
+	}
+
+	public long getEventiPubblicati() {
+		return eventiPubblicati.get();
+	}
+
+	public long getBatch() {
+		return batch.get();
+	}
+
+	public long getErroriDB() {
+		return erroriDB.get();
+	}
+
+	/**
+	 * Righe lette e non ancora interpretate
+	 */
+	public int getCodaRighe() {
+		return righe == null ? 0 : righe.size();
+	}
+
+	/**
+	 * Eventi interpretati e non ancora scritti
+	 */
+	public int getCodaEventi() {
+		return eventi == null ? 0 : eventi.size();
+	}
+
+	/**
+	 * Eventi pubblicati al secondo dall'avvio
+	 */
+	public double getThroughput() {
+		double secondi = (System.nanoTime() - avvio) / 1e9;
+		return righe == null || secondi <= 0 ? 0.0 : eventiPubblicati.get() / secondi;
+	}
+
+	public String metriche() {
+		return String.format("righe=%d scartate=%d inseriti=%d pubblicati=%d batch=%d erroriDB=%d coda righe=%d coda eventi=%d %.1f eventi/s",
+				getRigheLette(), getRigheScartate(), getEventiInseriti(), getEventiPubblicati(), getBatch(), getErroriDB(),
+				getCodaRighe(), getCodaEventi(), getThroughput());
+	}
+
+	/**
+	 * Da dove arrivano le righe
+	 */
+	private abstract static class Sorgente {
+		/**
+		 * Mette le righe nella coda (bloccandosi quando è piena) fino alla fine del flusso
+		 */
+		abstract void leggi(BlockingQueue<String> righe, AtomicLong lette) throws IOException, InterruptedException;
+
+		abstract void chiudi();
+
+		/**
+		 * Legge righe complete dal reader: una riga senza '\n' finale resta in sospeso finché non arriva il resto
+		 * (nel file seguito chi scrive può non aver ancora finito la riga)
+		 */
+		static void leggiRighe(Reader in, StringBuilder riga, BlockingQueue<String> righe, AtomicLong lette)
+				throws IOException, InterruptedException {
+			char[] buffer = new char[8192];
+			int n;
+			while((n = in.read(buffer)) > 0) {
+				for(int i = 0; i < n; i++) {
+					if(buffer[i] == '\n') {
+						righe.put(riga.toString());
+						lette.incrementAndGet();
+						riga.setLength(0);
+					} else {
+						riga.append(buffer[i]);
+					}
+				}
+				if(Thread.currentThread().isInterrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		}
+	}
+
+	private static class SorgenteFile extends Sorgente {
+		private final Path file;
+		private final boolean segui;
+
+		SorgenteFile(Path file, boolean segui) {
+			this.file = file;
+			this.segui = segui;
+		}
+
+		@Override
+		void leggi(BlockingQueue<String> righe, AtomicLong lette) throws IOException, InterruptedException {
+			try(Reader in = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+				StringBuilder riga = new StringBuilder();
+				while(true) {
+					leggiRighe(in, riga, righe, lette);
+					if(!segui) {
+						if(riga.length() > 0) {
+							righe.put(riga.toString());
+							lette.incrementAndGet();
+						}
+						return;
+					}
+					// In fondo al file: le prossime letture restituiscono quello che viene aggiunto
+					Thread.sleep(PAUSA_TAIL);
+				}
+			}
+		}
+
+		@Override
+		void chiudi() {
+		}
+	}
+
+	private static class SorgenteSocket extends Sorgente {
+		private final int porta;
+		private ServerSocket server;
+		private final List<Socket> connessioni = new CopyOnWriteArrayList<>();
+		private final List<Thread> lettori = new CopyOnWriteArrayList<>();
+
+		SorgenteSocket(int porta) {
+			this.porta = porta;
+		}
+
+		@Override
+		void leggi(final BlockingQueue<String> righe, final AtomicLong lette) throws IOException, InterruptedException {
+			synchronized(this) {
+				server = new ServerSocket(porta, 50, InetAddress.getLoopbackAddress());
+			}
+			try {
+				while(true) {
+					final Socket s = server.accept();
+					connessioni.add(s);
+					// Ogni connessione ha il suo thread; tutte scrivono nella stessa coda
+					Thread t = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							try(Reader in = new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)) {
+								StringBuilder riga = new StringBuilder();
+								leggiRighe(in, riga, righe, lette);
+								if(riga.length() > 0) {
+									righe.put(riga.toString());
+									lette.incrementAndGet();
+								}
+							} catch (IOException e) {
+								// connessione chiusa
+							} catch (InterruptedException e) {
+								// ferma()
+							} finally {
+								connessioni.remove(s);
+								lettori.remove(Thread.currentThread());
+							}
+						}
+					}, "ingestione-socket-" + s.getPort());
+					lettori.add(t);
+					t.setDaemon(true);
+					t.start();
+				}
+			} catch (IOException e) {
+				if(server.isClosed()) {
+					throw new InterruptedException(); // chiuso da ferma()
+				}
+				throw e;
+			}
+		}
+
+		@Override
+		synchronized void chiudi() {
+			try {
+				if(server != null) {
+					server.close();
+				}
+				for(Socket s : connessioni) {
+					s.close();
+				}
+				for(Thread t : lettori) {
+					t.interrupt(); // se sono fermi su una coda piena
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package it.polito.tdp.crimes.db;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.model.Event;
+import it.polito.tdp.crimes.model.Granularita;
+
+/**
+ * Sorgente di eventi in sola lettura: le interrogazioni che servono al simulatore e alla costruzione della rete
+ * delle zone. La implementano il DB ({@link EventsDao}, e quindi anche {@link EventStore}) e il generatore di
+ * crimini sintetici ({@link GeneratoreCrimini}), che non accede mai al DB.
+ */
+public interface SorgenteEventi {
+
+	/**
+	 * Passa al consumer gli eventi con reported_date nell'intervallo [da, a), in ordine di reported_date
+	 * @return il numero di eventi, -1 in caso di errore
+	 */
+	long forEachEventByDate(LocalDate da, LocalDate a, Consumer<Event> consumer);
+
+	/**
+	 * Eventi segnalati nel giorno indicato (lista vuota se la data non esiste)
+	 */
+	List<Event> listAllEventsByDate(Integer anno, Integer mese, Integer giorno);
+
+	/**
+	 * Id dei distretti
+	 */
+	List<Integer> getVertici();
+
+	/**
+	 * Valori distinti della colonna che identifica le zone alla granularità indicata
+	 */
+	List<String> getZone(Granularita granularita);
+
+	/**
+	 * Centro di ogni distretto nell'anno indicato; i distretti senza eventi nell'anno non compaiono
+	 */
+	Map<Integer, LatLng> centriDistretti(int anno);
+
+	/**
+	 * Come {@link #centriDistretti(int)} per le zone alla granularità indicata
+	 */
+	Map<String, LatLng> centriZone(Granularita granularita, int anno);
+
+	/**
+	 * Distretto con meno crimini nell'anno
+	 */
+	Integer getDistrettoMin(Integer anno);
+
+	/**
+	 * Come {@link #getDistrettoMin(Integer)} per le zone alla granularità indicata
+	 */
+	String getZonaMin(Granularita granularita, Integer anno);
+}
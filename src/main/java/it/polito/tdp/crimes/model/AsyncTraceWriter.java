@@ -0,0 +1,252 @@
+package it.polito.tdp.crimes.model;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Scrive la traccia della simulazione su file senza rallentare il ciclo degli eventi: i record vengono
+ * accumulati in blocchi di array primitivi e un thread dedicato scrive i blocchi pieni. I blocchi sono in
+ * numero fisso, quindi se il disco non tiene il passo la simulazione aspetta invece di consumare memoria.
+ * <p>
+ * Formato TESTO: una riga per record, "data;TIPO;incident_id;district_id".<br>
+ * Formato BINARIO: intestazione (int MAGIC, int VERSIONE) seguita da record di 21 byte
+ * (byte tipo, long tempo in secondi, long incident_id, int district_id), big-endian.<br>
+ * Per i crimini senza distretto il district_id è {@link #NESSUN_DISTRETTO}.
+ */
+public class AsyncTraceWriter implements SimulationListener, Closeable {
+	public enum Formato {
+		TESTO,
+		BINARIO
+	}
+
+	public static final int MAGIC = 0x43525452; // "CRTR"
+	public static final int VERSIONE = 1;
+	public static final int NESSUN_DISTRETTO = -1; // district_id registrato per i crimini senza distretto
+
+	private static final TipoTraccia[] TIPI = TipoTraccia.values();
+	private static final int DIM_BLOCCO = 4096;
+	private static final int N_BLOCCHI = 4;
+
+	private static class Blocco {
+		final byte[] tipo = new byte[DIM_BLOCCO];
+		final long[] tempo = new long[DIM_BLOCCO];
+		final long[] incidente = new long[DIM_BLOCCO];
+		final int[] distretto = new int[DIM_BLOCCO];
+		int n;
+	}
+
+	private static final Blocco FINE = new Blocco();
+
+	private final Formato formato;
+	private final OutputStream out;
+	private final BlockingQueue<Blocco> vuoti = new ArrayBlockingQueue<>(N_BLOCCHI);
+	private final BlockingQueue<Blocco> pieni = new ArrayBlockingQueue<>(N_BLOCCHI + 1);
+	private final Thread scrittore;
+	private Blocco corrente;
+	private volatile IOException errore;
+	private boolean chiuso;
+
+	public AsyncTraceWriter(Path file, Formato formato) throws IOException {
+		this(Files.newOutputStream(file), formato);
+	}
+
+	/**
+	 * Lo stream viene chiuso da {@link #close()}
+	 */
+	public AsyncTraceWriter(OutputStream out, Formato formato) {
+		this.out = out;
+		this.formato = formato;
+		for(int i = 0; i < N_BLOCCHI - 1; i++) {
+			vuoti.add(new Blocco());
+		}
+		corrente = new Blocco();
+
+		scrittore = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				scrivi();
+			}
+		}, "trace-writer");
+		scrittore.setDaemon(true);
+		scrittore.start();
+	}
+
+	private void registra(TipoTraccia t, long istante, Event crimine) {
+		Blocco b = corrente;
+		b.tipo[b.n] = (byte) t.ordinal();
+		b.tempo[b.n] = istante;
+		b.incidente[b.n] = crimine.getIncident_id();
+		b.distretto[b.n] = distretto(crimine);
+		if(++b.n == DIM_BLOCCO) {
+			try {
+				pieni.put(b);
+				corrente = vuoti.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Scrittura della traccia interrotta", e);
+			}
+		}
+	}
+
+	static int distretto(Event crimine) {
+		Integer d = crimine.getDistrict_id();
+		return d != null ? d : NESSUN_DISTRETTO;
+	}
+
+	@Override
+	public void crimine(long tempo, Event crimine) {
+		registra(TipoTraccia.CRIMINE, tempo, crimine);
+	}
+
+	/**
+	 * L'invio non viene registrato: nella traccia resta l'arrivo dell'agente
+	 */
+	@Override
+	public void invio(long tempo, Event crimine, int partenza, long arrivo) {
+	}
+
+	@Override
+	public void arrivoAgente(long tempo, Event crimine) {
+		registra(TipoTraccia.ARRIVA_AGENTE, tempo, crimine);
+	}
+
+	@Override
+	public void malGestito(long tempo, Event crimine) {
+		registra(TipoTraccia.MAL_GESTITO, tempo, crimine);
+	}
+
+	@Override
+	public void gestito(long tempo, Event crimine) {
+		registra(TipoTraccia.GESTITO, tempo, crimine);
+	}
+
+	// Ciclo del thread di scrittura
+	private void scrivi() {
+		try {
+			DataOutputStream binario = null;
+			Writer testo = null;
+			if(formato == Formato.BINARIO) {
+				binario = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+				binario.writeInt(MAGIC);
+				binario.writeInt(VERSIONE);
+			} else {
+				testo = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+			}
+
+			Blocco b;
+			while((b = pieni.take()) != FINE) {
+				for(int i = 0; i < b.n; i++) {
+					if(binario != null) {
+						binario.writeByte(b.tipo[i]);
+						binario.writeLong(b.tempo[i]);
+						binario.writeLong(b.incidente[i]);
+						binario.writeInt(b.distretto[i]);
+					} else {
+						testo.write(LocalDateTime.ofEpochSecond(b.tempo[i], 0, ZoneOffset.UTC) + ";" + TIPI[b.tipo[i]]
+								+ ";" + b.incidente[i] + ";" + b.distretto[i] + "\n");
+					}
+				}
+				b.n = 0;
+				vuoti.put(b);
+			}
+
+			if(binario != null) {
+				binario.flush();
+			} else {
+				testo.flush();
+			}
+		} catch (IOException e) {
+			errore = e;
+			// Continuo a svuotare la coda per non bloccare la simulazione
+			svuota();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void svuota() {
+		try {
+			Blocco b;
+			while((b = pieni.take()) != FINE) {
+				b.n = 0;
+				vuoti.put(b);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Scrive i record rimasti, attende il thread di scrittura e chiude lo stream
+	 * @throws IOException se la scrittura è fallita
+	 */
+	@Override
+	public void close() throws IOException {
+		if(chiuso) {
+			return;
+		}
+		chiuso = true;
+		try {
+			if(corrente.n > 0) {
+				pieni.put(corrente);
+			}
+			pieni.put(FINE);
+			scrittore.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Chiusura della traccia interrotta", e);
+		} finally {
+			out.close();
+		}
+		if(errore != null) {
+			throw errore;
+		}
+	}
+
+	/**
+	 * Legge una traccia in formato BINARIO e la restituisce in forma leggibile (per debug)
+	 */
+	public static List<String> leggiBinario(InputStream in) throws IOException {
+		DataInputStream dati = new DataInputStream(in);
+		if(dati.readInt() != MAGIC) {
+			throw new IOException("Il file non è una traccia binaria");
+		}
+		int versione = dati.readInt();
+		if(versione != VERSIONE) {
+			throw new IOException("Versione della traccia non supportata: " + versione);
+		}
+
+		List<String> list = new ArrayList<>();
+		while(true) {
+			byte tipo;
+			try {
+				tipo = dati.readByte();
+			} catch (EOFException e) {
+				break;
+			}
+			long tempo = dati.readLong();
+			long incidente = dati.readLong();
+			int distretto = dati.readInt();
+			list.add(LocalDateTime.ofEpochSecond(tempo, 0, ZoneOffset.UTC) + ";" + TIPI[tipo] + ";" + incidente + ";" + distretto);
+		}
+		return list;
+	}
+}
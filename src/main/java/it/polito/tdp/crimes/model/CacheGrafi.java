@@ -0,0 +1,112 @@
+package it.polito.tdp.crimes.model;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cache su disco delle matrici delle distanze tra le zone, un file per granularità e anno. I dati storici non
+ * cambiano, quindi la rete di un anno già calcolata viene riletta invece di essere ricalcolata.
+ * <p>
+ * Il file contiene un'intestazione (int MAGIC, int VERSIONE, int granularità, int anno, long righe,
+ * long ultima data) seguita dalla matrice serializzata. Righe e ultima data sono la firma della tabella EVENTS
+ * ({@link it.polito.tdp.crimes.db.EventsDao#firmaDati()}) al momento del calcolo: se la firma attuale è diversa
+ * il file non è più valido. I file sono letti e scritti mappandoli in memoria.
+ */
+public class CacheGrafi {
+	public static final int MAGIC = 0x43524746; // "CRGF"
+	public static final int VERSIONE = 2;
+
+	private static final int INTESTAZIONE = 4 + 4 + 4 + 4 + 8 + 8;
+
+	private final Path cartella;
+
+	public CacheGrafi(Path cartella) {
+		this.cartella = cartella;
+	}
+
+	/**
+	 * Cache nella cartella indicata dalla proprietà di sistema crimes.cache, oppure in ~/.crimes-cache
+	 */
+	public static CacheGrafi predefinita() {
+		String cartella = System.getProperty("crimes.cache");
+		return new CacheGrafi(cartella != null ? Paths.get(cartella)
+				: Paths.get(System.getProperty("user.home"), ".crimes-cache"));
+	}
+
+	public Path getFile(Granularita granularita, int anno) {
+		return cartella.resolve("grafo-" + granularita + "-" + anno + ".bin");
+	}
+
+	/**
+	 * @param firma firma attuale dei dati (vedi {@link it.polito.tdp.crimes.db.EventsDao#firmaDati()})
+	 * @return la matrice dell'anno, oppure null se non è in cache, se è stata calcolata su dati diversi
+	 * o se il file non è leggibile
+	 */
+	public DistanceMatrix carica(Granularita granularita, int anno, long[] firma) {
+		Path file = getFile(granularita, anno);
+		if(firma == null || !Files.isRegularFile(file)) {
+			return null;
+		}
+		try(FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size());
+			if(buffer.remaining() < INTESTAZIONE || buffer.getInt() != MAGIC || buffer.getInt() != VERSIONE
+					|| buffer.getInt() != granularita.ordinal() || buffer.getInt() != anno
+					|| buffer.getLong() != firma[0] || buffer.getLong() != firma[1]) {
+				return null;
+			}
+			return DistanceMatrix.leggi(buffer);
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			// File troncato o danneggiato: verrà ricalcolato e sovrascritto
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Salva la matrice dell'anno alla granularità indicata. Il file viene scritto a parte e poi rinominato,
+	 * quindi chi lo legge nello stesso momento vede la versione precedente oppure quella nuova, mai un file a metà.
+	 * @return true se il salvataggio è riuscito
+	 */
+	public boolean salva(Granularita granularita, int anno, long[] firma, DistanceMatrix matrice) {
+		if(firma == null) {
+			return false;
+		}
+		Path file = getFile(granularita, anno);
+		Path temporaneo = null;
+		try {
+			Files.createDirectories(cartella);
+			temporaneo = Files.createTempFile(cartella, "grafo-" + granularita + "-" + anno, ".tmp");
+			try(FileChannel canale = FileChannel.open(temporaneo, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer buffer = canale.map(FileChannel.MapMode.READ_WRITE, 0,
+						INTESTAZIONE + matrice.dimensioneBinaria());
+				buffer.putInt(MAGIC);
+				buffer.putInt(VERSIONE);
+				buffer.putInt(granularita.ordinal());
+				buffer.putInt(anno);
+				buffer.putLong(firma[0]);
+				buffer.putLong(firma[1]);
+				matrice.scrivi(buffer);
+				buffer.force();
+			}
+			Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			if(temporaneo != null) {
+				try {
+					Files.deleteIfExists(temporaneo);
+				} catch (IOException e2) {
+					e2.printStackTrace();
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+
+import it.polito.tdp.crimes.model.Evento.EventType;
+
+/**
+ * Coda con priorità degli eventi della simulazione senza allocazioni: un heap binario su array paralleli,
+ * ordinato per istante (secondi dall'epoca). Ogni elemento contiene il tipo di evento e l'indice del crimine
+ * a cui si riferisce (lo slot assegnato dal simulatore).
+ */
+class CodaEventi {
+	private static final EventType[] TIPI = EventType.values();
+
+	private long[] tempo;
+	private byte[] tipo;
+	private int[] crimine;
+	private int size;
+
+	CodaEventi() {
+		this(1024);
+	}
+
+	CodaEventi(int capacita) {
+		tempo = new long[capacita];
+		tipo = new byte[capacita];
+		crimine = new int[capacita];
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	void aggiungi(long t, EventType tipoEvento, int indiceCrimine) {
+		if(size == tempo.length) {
+			int capacita = tempo.length * 2;
+			tempo = Arrays.copyOf(tempo, capacita);
+			tipo = Arrays.copyOf(tipo, capacita);
+			crimine = Arrays.copyOf(crimine, capacita);
+		}
+		// Risalgo dal fondo spostando in giù i padri con istante maggiore
+		int i = size++;
+		while(i > 0) {
+			int padre = (i - 1) >>> 1;
+			if(tempo[padre] <= t) {
+				break;
+			}
+			sposta(padre, i);
+			i = padre;
+		}
+		tempo[i] = t;
+		tipo[i] = (byte) tipoEvento.ordinal();
+		crimine[i] = indiceCrimine;
+	}
+
+	/**
+	 * Istante del primo evento (la coda non deve essere vuota)
+	 */
+	long tempoTesta() {
+		return tempo[0];
+	}
+
+	EventType tipoTesta() {
+		return TIPI[tipo[0]];
+	}
+
+	int crimineTesta() {
+		return crimine[0];
+	}
+
+	/**
+	 * Rimuove il primo evento
+	 */
+	void rimuoviTesta() {
+		size--;
+		if(size == 0) {
+			return;
+		}
+		// Porto l'ultimo elemento in cima e lo faccio scendere
+		long t = tempo[size];
+		byte tp = tipo[size];
+		int c = crimine[size];
+		int i = 0;
+		int meta = size >>> 1;
+		while(i < meta) {
+			int figlio = 2*i + 1;
+			if(figlio + 1 < size && tempo[figlio + 1] < tempo[figlio]) {
+				figlio++;
+			}
+			if(t <= tempo[figlio]) {
+				break;
+			}
+			sposta(figlio, i);
+			i = figlio;
+		}
+		tempo[i] = t;
+		tipo[i] = tp;
+		crimine[i] = c;
+	}
+
+	private void sposta(int da, int a) {
+		tempo[a] = tempo[da];
+		tipo[a] = tipo[da];
+		crimine[a] = crimine[da];
+	}
+}
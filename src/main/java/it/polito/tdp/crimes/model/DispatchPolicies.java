@@ -0,0 +1,153 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Politiche di invio predefinite, da usare con {@link Simulatore#setPolitica(DispatchPolicy)} o da confrontare
+ * con {@link Model#confrontaPolitiche}
+ */
+public class DispatchPolicies {
+	private static final long RITARDO_MASSIMO = 15*60; // oltre questo tempo di arrivo il crimine è mal gestito
+
+	private DispatchPolicies() {
+	}
+
+	private static final DispatchPolicy PIU_VICINO = new DispatchPolicy() {
+		@Override
+		public int partenza(Stato stato, Event crimine, int zona, long istante) {
+			// Scorro le zone dalla più vicina alla più lontana e mi fermo alla prima con almeno un agente libero
+			for(int k = 0; k < stato.getZone(); k++) {
+				int d = stato.vicino(zona, k);
+				if(stato.getLiberi(d) > 0) {
+					return d;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int rientro(Stato stato, Event crimine, int zona, long istante) {
+			return zona;
+		}
+
+		@Override
+		public String toString() {
+			return "più vicino";
+		}
+	};
+
+	/**
+	 * L'agente libero più vicino, che a fine intervento resta libero nella zona del crimine (il comportamento
+	 * storico del simulatore)
+	 */
+	public static DispatchPolicy piuVicino() {
+		return PIU_VICINO;
+	}
+
+	private static final DispatchPolicy MENO_CARICA = new DispatchPolicy() {
+		@Override
+		public int partenza(Stato stato, Event crimine, int zona, long istante) {
+			int primo = -1; // la zona libera più vicina, se nessuna arriva in tempo
+			int scelta = -1;
+			for(int k = 0; k < stato.getZone(); k++) {
+				int d = stato.vicino(zona, k);
+				int liberi = stato.getLiberi(d);
+				if(liberi == 0) {
+					continue;
+				}
+				if(primo < 0) {
+					primo = d;
+				}
+				// Le zone sono in ordine di tempo di percorrenza: dalla prima troppo lontana in poi nessuna arriva in tempo
+				if(stato.tempo(d, zona, istante) > RITARDO_MASSIMO) {
+					break;
+				}
+				if(scelta < 0 || liberi > stato.getLiberi(scelta)) {
+					scelta = d;
+				}
+			}
+			return scelta >= 0 ? scelta : primo;
+		}
+
+		@Override
+		public int rientro(Stato stato, Event crimine, int zona, long istante) {
+			return zona;
+		}
+
+		@Override
+		public String toString() {
+			return "meno carica";
+		}
+	};
+
+	/**
+	 * Tra le zone da cui un agente arriva entro 15 minuti sceglie quella con più agenti liberi (a parità la più
+	 * vicina), così le zone con pochi agenti non restano scoperte; se nessuna arriva in tempo sceglie la più vicina
+	 */
+	public static DispatchPolicy menoCarica() {
+		return MENO_CARICA;
+	}
+
+	/**
+	 * Come la politica base, ma a fine intervento l'agente torna in centrale e resta occupato per tutto il viaggio
+	 */
+	public static DispatchPolicy rientroInCentrale(final DispatchPolicy base) {
+		return new DispatchPolicy() {
+			@Override
+			public int partenza(Stato stato, Event crimine, int zona, long istante) {
+				return base.partenza(stato, crimine, zona, istante);
+			}
+
+			@Override
+			public int rientro(Stato stato, Event crimine, int zona, long istante) {
+				return stato.getCentrale();
+			}
+
+			@Override
+			public String toString() {
+				return base + ", rientro in centrale";
+			}
+		};
+	}
+
+	public static DispatchPolicy rientroInCentrale() {
+		return rientroInCentrale(PIU_VICINO);
+	}
+
+	/**
+	 * Come la politica base, ma gli ultimi agenti liberi sono tenuti di riserva per le categorie prioritarie
+	 * (offense_category_id): un crimine di un'altra categoria non riceve agenti se ne restano liberi al più riserva,
+	 * e quindi è mal gestito
+	 */
+	public static DispatchPolicy perPriorita(final DispatchPolicy base, Collection<String> prioritarie, final int riserva) {
+		if(riserva < 0) {
+			throw new IllegalArgumentException("Riserva non valida: " + riserva);
+		}
+		final Set<String> categorie = new HashSet<>(prioritarie);
+		return new DispatchPolicy() {
+			@Override
+			public int partenza(Stato stato, Event crimine, int zona, long istante) {
+				if(crimine != null && stato.getLiberi() <= riserva && !categorie.contains(crimine.getOffense_category_id())) {
+					return -1;
+				}
+				return base.partenza(stato, crimine, zona, istante);
+			}
+
+			@Override
+			public int rientro(Stato stato, Event crimine, int zona, long istante) {
+				return base.rientro(stato, crimine, zona, istante);
+			}
+
+			@Override
+			public String toString() {
+				return base + ", riserva di " + riserva + " per " + categorie;
+			}
+		};
+	}
+
+	public static DispatchPolicy perPriorita(Collection<String> prioritarie, int riserva) {
+		return perPriorita(PIU_VICINO, prioritarie, riserva);
+	}
+}
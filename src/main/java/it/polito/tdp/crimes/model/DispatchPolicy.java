@@ -0,0 +1,59 @@
+package it.polito.tdp.crimes.model;
+
+/**
+ * Politica con cui la centrale sceglie da quale zona inviare un agente e dove l'agente torna libero a fine
+ * intervento. Le zone sono indicate con l'indice denso della matrice delle distanze.
+ * <p>
+ * Una politica non deve avere stato proprio: la stessa istanza può essere usata da più simulatori in parallelo,
+ * che le passano ogni volta il proprio {@link Stato}. Le implementazioni più comuni sono in {@link DispatchPolicies}.
+ * Vale solo per la simulazione a zone: in modalità puntuale gli agenti sono scelti sempre con la griglia.
+ */
+public interface DispatchPolicy {
+
+	/**
+	 * Stato degli agenti visto dalla politica, in sola lettura
+	 */
+	interface Stato {
+		int getZone();
+
+		/**
+		 * Agenti in servizio (N)
+		 */
+		int getAgenti();
+
+		/**
+		 * Agenti liberi in tutta la città
+		 */
+		int getLiberi();
+
+		int getLiberi(int zona);
+
+		int getCentrale();
+
+		/**
+		 * La k-esima zona più vicina per tempo di percorrenza: k = 0 è la zona stessa
+		 */
+		int vicino(int zona, int k);
+
+		/**
+		 * Secondi per andare da una zona all'altra partendo all'istante indicato
+		 */
+		long tempo(int da, int a, long partenza);
+	}
+
+	/**
+	 * Chiamato solo se c'è almeno un agente libero
+	 * @param crimine null se la ricerca non riguarda un crimine preciso (nei benchmark)
+	 * @param zona zona del crimine
+	 * @return la zona da cui parte l'agente, che deve averne almeno uno libero, oppure -1 per non inviare
+	 * nessuno (il crimine è mal gestito)
+	 */
+	int partenza(Stato stato, Event crimine, int zona, long istante);
+
+	/**
+	 * @param zona zona del crimine, dove l'agente ha concluso l'intervento
+	 * @return la zona in cui l'agente torna libero: se è diversa dalla zona del crimine l'agente resta
+	 * occupato per il tempo del viaggio di rientro
+	 */
+	int rientro(Stato stato, Event crimine, int zona, long istante);
+}
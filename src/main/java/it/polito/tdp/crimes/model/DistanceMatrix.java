@@ -0,0 +1,320 @@
+package it.polito.tdp.crimes.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.javadocmd.simplelatlng.LatLng;
+import com.javadocmd.simplelatlng.LatLngTool;
+import com.javadocmd.simplelatlng.util.LengthUnit;
+
+/**
+ * Matrice delle distanze (in km) tra i centri dei distretti.
+ * Il grafo dei distretti è completo, quindi invece di cercare gli archi nel grafo JGraphT
+ * ogni distanza è una lettura da un array: gli id dei distretti sono mappati su indici densi
+ * 0..n-1 e le distanze sono memorizzate riga per riga in un unico double[].
+ * Con molti distretti (precinti o quartieri) le righe vengono calcolate in parallelo nel pool fork-join comune.
+ */
+public class DistanceMatrix {
+	private static final int RIGHE_PER_BLOCCO = 16; // righe sotto le quali un blocco non viene più diviso
+	
+	private final int[] id; // indice -> id del distretto, ordinato
+	private final double[] lat;
+	private final double[] lon;
+	private final double[] distanze; // distanze[i*n + j]
+	private final int[] vicini; // riga i: indici di tutti i distretti ordinati per distanza crescente da i (i compreso, per primo)
+
+	/**
+	 * @param centri mappa id distretto -> centro del distretto
+	 */
+	public DistanceMatrix(Map<Integer, LatLng> centri) {
+		int n = centri.size();
+		id = new int[n];
+		int k = 0;
+		for(Integer d : centri.keySet()) {
+			id[k++] = d;
+		}
+		Arrays.sort(id);
+
+		lat = new double[n];
+		lon = new double[n];
+		LatLng[] punti = new LatLng[n];
+		for(int i = 0; i < n; i++) {
+			punti[i] = centri.get(id[i]);
+			lat[i] = punti[i].getLatitude();
+			lon[i] = punti[i].getLongitude();
+		}
+
+		distanze = new double[n*n];
+		vicini = new int[n*n];
+		// L'ordine dei vicini richiede le righe complete, quindi parte solo quando tutte le distanze sono calcolate
+		esegui(new Righe(punti, 0, n, false));
+		esegui(new Righe(punti, 0, n, true));
+	}
+
+	/**
+	 * Copia indipendente della matrice: gli spostamenti di centro dell'una non toccano l'altra
+	 */
+	public DistanceMatrix(DistanceMatrix altra) {
+		this(altra.id.clone(), altra.lat.clone(), altra.lon.clone(), altra.distanze.clone(), altra.vicini.clone());
+	}
+
+	private static void esegui(Righe righe) {
+		if(righe.a - righe.da <= RIGHE_PER_BLOCCO) {
+			righe.compute();
+		} else {
+			ForkJoinPool.commonPool().invoke(righe);
+		}
+	}
+
+	/**
+	 * Calcola le distanze oppure l'ordine dei vicini per le righe [da, a). I blocchi vengono divisi a metà
+	 * finché non sono abbastanza piccoli; le prime righe, che hanno più coppie da calcolare, vengono
+	 * bilanciate dal work stealing.
+	 */
+	private class Righe extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final LatLng[] punti;
+		private final int da;
+		private final int a;
+		private final boolean ordina;
+
+		Righe(LatLng[] punti, int da, int a, boolean ordina) {
+			this.punti = punti;
+			this.da = da;
+			this.a = a;
+			this.ordina = ordina;
+		}
+
+		@Override
+		protected void compute() {
+			if(a - da <= RIGHE_PER_BLOCCO) {
+				for(int i = da; i < a; i++) {
+					if(ordina) {
+						ordinaVicini(i);
+					} else {
+						calcolaRiga(punti, i);
+					}
+				}
+			} else {
+				int m = (da + a) >>> 1;
+				invokeAll(new Righe(punti, da, m, ordina), new Righe(punti, m, a, ordina));
+			}
+		}
+	}
+
+	// La distanza è simmetrica: ogni riga calcola solo il triangolo superiore e lo ricopia nella colonna,
+	// quindi ogni cella è scritta da una sola riga
+	private void calcolaRiga(LatLng[] punti, int i) {
+		int n = punti.length;
+		for(int j = i+1; j < n; j++) {
+			double d = LatLngTool.distance(punti[i], punti[j], LengthUnit.KILOMETER);
+			distanze[i*n + j] = d;
+			distanze[j*n + i] = d;
+		}
+	}
+
+	private void ordinaVicini(final int origine) {
+		int n = id.length;
+		Integer[] riga = new Integer[n];
+		for(int j = 0; j < n; j++) {
+			riga[j] = j;
+		}
+		// A parità di distanza viene prima il distretto stesso, poi quello con indice minore
+		Arrays.sort(riga, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				if(o1 == origine || o2 == origine) {
+					return o1 == origine ? (o2 == origine ? 0 : -1) : 1;
+				}
+				int c = Double.compare(distanza(origine, o1), distanza(origine, o2));
+				return c != 0 ? c : o1.compareTo(o2);
+			}
+		});
+		for(int j = 0; j < n; j++) {
+			vicini[origine*n + j] = riga[j];
+		}
+	}
+
+	/**
+	 * Sposta il centro della zona di indice i aggiornando solo quello che ne dipende: riga e colonna i delle
+	 * distanze (n distanze invece di n*n), l'ordine dei vicini della riga i e la posizione di i nell'ordine di
+	 * ogni altra riga, dove viene trovata con una ricerca binaria e fatta scorrere fino al nuovo posto.
+	 * La matrice è modificata sul posto: non va chiamato mentre altri thread la stanno leggendo.
+	 */
+	void spostaCentro(int i, double nuovaLat, double nuovaLon) {
+		int n = id.length;
+		double[] vecchie = Arrays.copyOfRange(distanze, i*n, i*n + n);
+		LatLng centro = new LatLng(nuovaLat, nuovaLon);
+		lat[i] = centro.getLatitude();
+		lon[i] = centro.getLongitude();
+		for(int j = 0; j < n; j++) {
+			if(j != i) {
+				// Stesso ordine degli argomenti del calcolo completo, che parte sempre dall'indice minore
+				LatLng altro = new LatLng(lat[j], lon[j]);
+				double d = j < i ? LatLngTool.distance(altro, centro, LengthUnit.KILOMETER)
+						: LatLngTool.distance(centro, altro, LengthUnit.KILOMETER);
+				distanze[i*n + j] = d;
+				distanze[j*n + i] = d;
+			}
+		}
+		ordinaVicini(i);
+		for(int r = 0; r < n; r++) {
+			if(r != i) {
+				riposiziona(r, i, vecchie[r]);
+			}
+		}
+	}
+
+	/**
+	 * Nella riga r, ordinata con la vecchia distanza da i, sposta i al posto giusto per la nuova distanza
+	 */
+	private void riposiziona(int r, int i, double vecchia) {
+		int n = id.length;
+		int base = r*n;
+		// La posizione 0 è sempre r stesso; le altre sono ordinate per (distanza, indice)
+		int lo = 1, hi = n - 1, p = -1;
+		while(p < 0) {
+			int m = (lo + hi) >>> 1;
+			int x = vicini[base + m];
+			if(x == i) {
+				p = m;
+			} else if(precede(r, x, vecchia, i)) {
+				lo = m + 1;
+			} else {
+				hi = m - 1;
+			}
+		}
+		double nuova = distanza(r, i);
+		while(p + 1 < n && precede(r, vicini[base + p + 1], nuova, i)) {
+			vicini[base + p] = vicini[base + p + 1];
+			p++;
+		}
+		while(p - 1 >= 1 && !precede(r, vicini[base + p - 1], nuova, i)) {
+			vicini[base + p] = vicini[base + p - 1];
+			p--;
+		}
+		vicini[base + p] = i;
+	}
+
+	/**
+	 * true se nella riga r la zona x viene prima di una zona y a distanza d
+	 */
+	private boolean precede(int r, int x, double d, int y) {
+		int c = Double.compare(distanza(r, x), d);
+		return c != 0 ? c < 0 : x < y;
+	}
+
+	private DistanceMatrix(int[] id, double[] lat, double[] lon, double[] distanze, int[] vicini) {
+		this.id = id;
+		this.lat = lat;
+		this.lon = lon;
+		this.distanze = distanze;
+		this.vicini = vicini;
+	}
+
+	/**
+	 * Byte occupati dalla matrice in forma serializzata
+	 */
+	int dimensioneBinaria() {
+		int n = id.length;
+		return 4 + n * (4 + 8 + 8) + n * n * (8 + 4);
+	}
+
+	/**
+	 * Scrive la matrice nel buffer: n, id, lat, lon, distanze e vicini, copiati in blocco
+	 */
+	void scrivi(ByteBuffer buffer) {
+		int n = id.length;
+		buffer.putInt(n);
+		buffer.asIntBuffer().put(id);
+		buffer.position(buffer.position() + 4 * n);
+		buffer.asDoubleBuffer().put(lat);
+		buffer.position(buffer.position() + 8 * n);
+		buffer.asDoubleBuffer().put(lon);
+		buffer.position(buffer.position() + 8 * n);
+		buffer.asDoubleBuffer().put(distanze);
+		buffer.position(buffer.position() + 8 * n * n);
+		buffer.asIntBuffer().put(vicini);
+		buffer.position(buffer.position() + 4 * n * n);
+	}
+
+	/**
+	 * Legge una matrice scritta da {@link #scrivi(ByteBuffer)}
+	 * @throws IllegalArgumentException se n non è valido o il buffer non contiene tutta la matrice
+	 * (file danneggiato: non si alloca nulla)
+	 */
+	static DistanceMatrix leggi(ByteBuffer buffer) {
+		int n = buffer.getInt();
+		// 46340 è il massimo n per cui n*n sta in un int
+		if(n < 0 || n > 46340 || buffer.remaining() < 20L * n + 12L * n * n) {
+			throw new IllegalArgumentException("Matrice non valida: n = " + n + ", byte disponibili " + buffer.remaining());
+		}
+		int[] id = new int[n];
+		double[] lat = new double[n];
+		double[] lon = new double[n];
+		double[] distanze = new double[n*n];
+		int[] vicini = new int[n*n];
+		buffer.asIntBuffer().get(id);
+		buffer.position(buffer.position() + 4 * n);
+		buffer.asDoubleBuffer().get(lat);
+		buffer.position(buffer.position() + 8 * n);
+		buffer.asDoubleBuffer().get(lon);
+		buffer.position(buffer.position() + 8 * n);
+		buffer.asDoubleBuffer().get(distanze);
+		buffer.position(buffer.position() + 8 * n * n);
+		buffer.asIntBuffer().get(vicini);
+		buffer.position(buffer.position() + 4 * n * n);
+		return new DistanceMatrix(id, lat, lon, distanze, vicini);
+	}
+
+	public int size() {
+		return id.length;
+	}
+
+	public int getId(int indice) {
+		return id[indice];
+	}
+
+	/**
+	 * @return l'indice denso del distretto, oppure -1 se il distretto non è nella matrice
+	 */
+	public int indiceDi(int distretto) {
+		int i = Arrays.binarySearch(id, distretto);
+		return i >= 0 ? i : -1;
+	}
+
+	public double getLat(int indice) {
+		return lat[indice];
+	}
+
+	public double getLon(int indice) {
+		return lon[indice];
+	}
+
+	/**
+	 * Distanza in km tra due distretti, dati i loro indici densi
+	 */
+	public double distanza(int i, int j) {
+		return distanze[i*id.length + j];
+	}
+
+	/**
+	 * Restituisce il k-esimo distretto più vicino a quello di indice i: k = 0 è il distretto stesso,
+	 * k = size()-1 il più lontano.
+	 */
+	public int vicino(int i, int k) {
+		return vicini[i*id.length + k];
+	}
+
+	/**
+	 * Distanza in km tra due distretti, dati i loro id
+	 */
+	public double distanzaTraDistretti(int d1, int d2) {
+		return distanza(indiceDi(d1), indiceDi(d2));
+	}
+}
@@ -6,7 +6,8 @@ public class Evento implements Comparable<Evento> {
 	public enum EventType {
 		CRIMINE,
 		ARRIVA_AGENTE,
-		GESTITO
+		GESTITO,
+		RIENTRO
 	}
 	
 	private EventType type;
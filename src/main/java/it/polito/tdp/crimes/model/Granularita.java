@@ -0,0 +1,29 @@
+package it.polito.tdp.crimes.model;
+
+/**
+ * Livello a cui sono definite le zone della rete cittadina, cioè i vertici del grafo e le zone in cui
+ * si spostano gli agenti nella simulazione
+ */
+public enum Granularita {
+	DISTRETTO("district_id"),
+	PRECINTO("precinct_id"),
+	QUARTIERE("neighborhood_id");
+
+	private final String colonna;
+
+	private Granularita(String colonna) {
+		this.colonna = colonna;
+	}
+
+	/**
+	 * Colonna della tabella EVENTS che identifica la zona
+	 */
+	public String getColonna() {
+		return colonna;
+	}
+
+	@Override
+	public String toString() {
+		return name().toLowerCase();
+	}
+}
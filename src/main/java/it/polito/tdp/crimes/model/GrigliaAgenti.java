@@ -0,0 +1,200 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+
+/**
+ * Indice spaziale degli agenti liberi: una griglia uniforme sulle coordinate proiettate in km (proiezione
+ * equirettangolare attorno al centro dell'area, che a scala cittadina ordina le distanze come la formula
+ * dell'haversine). Ogni cella tiene una lista doppiamente concatenata degli agenti liberi che contiene,
+ * su array primitivi, quindi liberare o occupare un agente costa O(1).
+ * <p>
+ * La ricerca del più vicino visita le celle ad anelli concentrici attorno a quella del punto e si ferma
+ * appena la distanza dal punto al bordo della zona già visitata supera il miglior candidato trovato.
+ * I punti fuori dall'area della griglia finiscono nelle celle di bordo: per la ricerca le celle di bordo
+ * si estendono all'infinito verso l'esterno, quindi il risultato resta esatto.
+ */
+class GrigliaAgenti {
+	private static final double KM_PER_GRADO = 111.195; // km per grado di latitudine (raggio terrestre medio)
+
+	private final double kmPerGradoLon; // alla latitudine centrale dell'area
+	private final double x0; // angolo della griglia in km
+	private final double y0;
+	private final double lato; // lato di una cella in km
+	private final int nx;
+	private final int ny;
+
+	private final int[] testa; // cella -> primo agente libero (-1 se vuota)
+	private final int[] successivo; // agente -> agente successivo nella cella
+	private final int[] precedente; // agente -> agente precedente nella cella
+	private final int[] cella; // agente -> cella, -1 se occupato
+	private final double[] x; // posizione dell'agente in km
+	private final double[] y;
+	private int liberi;
+
+	/**
+	 * La griglia copre l'area [latMin, latMax] x [lonMin, lonMax], dove si trovano di solito crimini e agenti
+	 * (fuori dall'area la ricerca funziona comunque, ma visita più celle).
+	 * @param agenti numero di agenti, numerati 0..agenti-1; all'inizio sono tutti occupati
+	 */
+	GrigliaAgenti(double latMin, double latMax, double lonMin, double lonMax, int agenti) {
+		kmPerGradoLon = KM_PER_GRADO * Math.cos(Math.toRadians((latMin + latMax) / 2));
+		x0 = lonMin * kmPerGradoLon;
+		y0 = latMin * KM_PER_GRADO;
+		double larghezza = Math.max((lonMax - lonMin) * kmPerGradoLon, 1e-3);
+		double altezza = Math.max((latMax - latMin) * KM_PER_GRADO, 1e-3);
+
+		// Circa un agente per cella, con celle quadrate
+		int celle = Math.max(1, Math.min(agenti, 1 << 20));
+		lato = Math.sqrt(larghezza * altezza / celle);
+		nx = Math.max(1, (int) Math.ceil(larghezza / lato));
+		ny = Math.max(1, (int) Math.ceil(altezza / lato));
+
+		testa = new int[nx * ny];
+		Arrays.fill(testa, -1);
+		successivo = new int[agenti];
+		precedente = new int[agenti];
+		cella = new int[agenti];
+		Arrays.fill(cella, -1);
+		x = new double[agenti];
+		y = new double[agenti];
+	}
+
+	private double x(double lon) {
+		return lon * kmPerGradoLon;
+	}
+
+	private double y(double lat) {
+		return lat * KM_PER_GRADO;
+	}
+
+	private int colonna(double px) {
+		return Math.min(Math.max((int) Math.floor((px - x0) / lato), 0), nx - 1);
+	}
+
+	private int riga(double py) {
+		return Math.min(Math.max((int) Math.floor((py - y0) / lato), 0), ny - 1);
+	}
+
+	int getLiberi() {
+		return liberi;
+	}
+
+	boolean isLibero(int agente) {
+		return cella[agente] >= 0;
+	}
+
+	double getLat(int agente) {
+		return y[agente] / KM_PER_GRADO;
+	}
+
+	double getLon(int agente) {
+		return x[agente] / kmPerGradoLon;
+	}
+
+	/**
+	 * L'agente diventa libero nella posizione indicata
+	 */
+	void libera(int agente, double lat, double lon) {
+		if(cella[agente] >= 0) {
+			occupa(agente);
+		}
+		x[agente] = x(lon);
+		y[agente] = y(lat);
+		int c = riga(y[agente]) * nx + colonna(x[agente]);
+		cella[agente] = c;
+		precedente[agente] = -1;
+		successivo[agente] = testa[c];
+		if(testa[c] >= 0) {
+			precedente[testa[c]] = agente;
+		}
+		testa[c] = agente;
+		liberi++;
+	}
+
+	/**
+	 * Toglie l'agente dagli agenti liberi (deve essere libero)
+	 */
+	void occupa(int agente) {
+		int c = cella[agente];
+		int p = precedente[agente];
+		int s = successivo[agente];
+		if(p >= 0) {
+			successivo[p] = s;
+		} else {
+			testa[c] = s;
+		}
+		if(s >= 0) {
+			precedente[s] = p;
+		}
+		cella[agente] = -1;
+		liberi--;
+	}
+
+	// Stato della ricerca in corso
+	private int migliore;
+	private double minimo; // distanza al quadrato del migliore
+
+	private void visita(int c, double px, double py) {
+		for(int a = testa[c]; a >= 0; a = successivo[a]) {
+			double dx = x[a] - px;
+			double dy = y[a] - py;
+			double d = dx * dx + dy * dy;
+			if(d < minimo || (d == minimo && a < migliore)) {
+				minimo = d;
+				migliore = a;
+			}
+		}
+	}
+
+	/**
+	 * @return l'agente libero più vicino al punto, -1 se non ci sono agenti liberi
+	 */
+	int piuVicino(double lat, double lon) {
+		if(liberi == 0) {
+			return -1;
+		}
+		double px = x(lon);
+		double py = y(lat);
+		int cx = colonna(px);
+		int cy = riga(py);
+
+		migliore = -1;
+		minimo = Double.MAX_VALUE;
+		for(int r = 0; ; r++) {
+			// Celle a distanza r (in celle) da quella del punto: il perimetro del quadrato di lato 2r+1
+			int c0 = cx - r, c1 = cx + r, r0 = cy - r, r1 = cy + r;
+			for(int j = Math.max(r0, 0); j <= Math.min(r1, ny - 1); j++) {
+				if(j == r0 || j == r1) {
+					for(int i = Math.max(c0, 0); i <= Math.min(c1, nx - 1); i++) {
+						visita(j * nx + i, px, py);
+					}
+				} else {
+					if(c0 >= 0) {
+						visita(j * nx + c0, px, py);
+					}
+					if(c1 < nx && c1 != c0) {
+						visita(j * nx + c1, px, py);
+					}
+				}
+			}
+
+			// Distanza dal punto al bordo della zona visitata (le celle di bordo si estendono all'esterno)
+			double limite = Double.MAX_VALUE;
+			if(c0 > 0) {
+				limite = Math.min(limite, px - (x0 + c0 * lato));
+			}
+			if(c1 < nx - 1) {
+				limite = Math.min(limite, x0 + (c1 + 1) * lato - px);
+			}
+			if(r0 > 0) {
+				limite = Math.min(limite, py - (y0 + r0 * lato));
+			}
+			if(r1 < ny - 1) {
+				limite = Math.min(limite, y0 + (r1 + 1) * lato - py);
+			}
+			if(limite == Double.MAX_VALUE || (migliore >= 0 && limite * limite > minimo)) {
+				return migliore;
+			}
+		}
+	}
+}
@@ -1,9 +1,29 @@
 package it.polito.tdp.crimes.model;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
 import org.jgrapht.Graph;
 import org.jgrapht.Graphs;
@@ -11,20 +31,54 @@ import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
 
 import com.javadocmd.simplelatlng.LatLng;
-import com.javadocmd.simplelatlng.LatLngTool;
-import com.javadocmd.simplelatlng.util.LengthUnit;
 
+import it.polito.tdp.crimes.db.EventStore;
 import it.polito.tdp.crimes.db.EventsDao;
+import it.polito.tdp.crimes.db.GeneratoreCrimini;
+import it.polito.tdp.crimes.db.PipelineIngestione;
+import it.polito.tdp.crimes.db.SorgenteEventi;
 
 public class Model {
+	// Operazioni asincrone in attesa oltre a quella in esecuzione: oltre questo limite vengono rifiutate
+	private static final int MAX_IN_ATTESA = 8;
+	
+	private static final DoubleConsumer NESSUN_AVANZAMENTO = new DoubleConsumer() {
+		@Override
+		public void accept(double frazione) {
+		}
+	};
+	
 	private EventsDao dao;
-	private Graph<Integer, DefaultWeightedEdge> grafo;
+	// Scritti dal thread delle operazioni asincrone e letti dall'interfaccia
+	private volatile Graph<Integer, DefaultWeightedEdge> grafo;
+	private volatile DistanceMatrix distanze;
+	private volatile TempiPercorrenza tempi; // calcolati sulla rete corrente
+	private ProfiloVelocita profilo = ProfiloVelocita.costante(ProfiloVelocita.VELOCITA_PREDEFINITA);
+	private CacheGrafi cache = CacheGrafi.predefinita();
+	private Granularita granularita = Granularita.DISTRETTO;
+	private int k; // archi verso le k zone più vicine a ogni zona (0 = grafo completo)
+	private volatile Zonizzazione zone = Zonizzazione.DISTRETTI;
+	private boolean puntuale; // agenti con posizione vera invece che nei centri delle zone
+	// Aggiornamento incrementale della rete: anno della rete corrente (null se creata da centri già calcolati)
+	// e somme delle coordinate delle sue zone, lette dal DB al primo aggiornamento e conservate se la rete
+	// viene ricreata per lo stesso anno con le stesse zone
+	private Integer annoGrafo;
+	private SommeCentri somme;
+	private ThreadPoolExecutor operazioni;
 	
 	
 	public Model() {
 		dao = new EventsDao();	
 	}
 	
+	/**
+	 * @param inMemoria se true la tabella degli eventi viene caricata una sola volta in un {@link EventStore}
+	 * e tutte le interrogazioni successive (date, grafo, simulazioni) non accedono più al DB
+	 */
+	public Model(boolean inMemoria) {
+		dao = inMemoria ? EventStore.carica() : new EventsDao();
+	}
+	
 	public List<Integer> getAnni() {
 		return dao.anniCrimes();
 	}
@@ -37,29 +91,288 @@ public class Model {
 		return dao.giorniCrimes();
 	}
 	
+	/**
+	 * Crea la rete delle zone per l'anno indicato alla granularità scelta, rileggendola dalla cache se i dati
+	 * non sono cambiati dall'ultimo calcolo
+	 */
 	public void creaGrafo(int anno) {
-		grafo = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
-		Graphs.addAllVertices(grafo, dao.getVertici());
+		creaGrafo(anno, NESSUN_AVANZAMENTO);
+	}
+	
+	private void creaGrafo(int anno, DoubleConsumer avanzamento) {
+		// Per i quartieri servono tutti i nomi per numerarli; distretti e precinti hanno già id interi
+		List<String> valori = granularita == Granularita.QUARTIERE ? dao.getZone(granularita) : new ArrayList<String>();
+		Zonizzazione nuove = Zonizzazione.crea(granularita, valori);
 		
-		for(Integer v1 : grafo.vertexSet()) {
-			for(Integer v2 : grafo.vertexSet()) {
-				Double latV1 = dao.latMedia(v1, anno);
-				Double latV2 = dao.latMedia(v2, anno);
-				Double longV1 = dao.longMedia(v1, anno);
-				Double longV2 = dao.longMedia(v2, anno);
-				
-				LatLng centro1 = new LatLng(latV1, longV1);
-				LatLng centro2 = new LatLng(latV2, longV2);
-				Double peso = LatLngTool.distance(centro1, centro2, LengthUnit.KILOMETER);
-				
-				if(!v1.equals(v2) && !grafo.containsEdge(grafo.getEdge(v1, v2))) {
-					Graphs.addEdgeWithVertices(grafo, v1, v2, peso);
-					
+		long[] firma = cache != null ? dao.firmaDati() : null;
+		DistanceMatrix matrice = cache != null ? cache.carica(granularita, anno, firma) : null;
+		if(matrice == null) {
+			// Calcolo una sola volta il centro di ogni zona (un'unica query raggruppata per zona)
+			Map<Integer, LatLng> centri;
+			List<Integer> vertici = new ArrayList<>();
+			if(granularita == Granularita.DISTRETTO) {
+				centri = dao.centriDistretti(anno);
+				vertici = dao.getVertici();
+			} else {
+				centri = nuove.perId(dao.centriZone(granularita, anno));
+				if(granularita != Granularita.QUARTIERE) {
+					valori = dao.getZone(granularita);
+				}
+				for(String v : valori) {
+					vertici.add(nuove.id(v));
+				}
+			}
+			Map<Integer, LatLng> centriVertici = new HashMap<>();
+			for(Integer v : vertici) {
+				LatLng centro = centri.get(v);
+				if(centro == null) {
+					// Zona senza eventi nell'anno: come AVG su nessuna riga letto con getDouble
+					centro = new LatLng(0.0, 0.0);
+				}
+				centriVertici.put(v, centro);
+			}
+			avanzamento.accept(0.3);
+			matrice = new DistanceMatrix(centriVertici);
+			if(cache != null) {
+				cache.salva(granularita, anno, firma, matrice);
+			}
+		}
+		avanzamento.accept(0.7);
+		// Rileggere le somme dal DB conterebbe due volte gli eventi già inseriti ma non ancora passati
+		// ad aggiungiEventi: se anno e zone non cambiano si tengono quelle aggiornate finora
+		if(somme == null || annoGrafo == null || annoGrafo != anno || !somme.stessaRete(matrice, nuove)) {
+			somme = null;
+		}
+		zone = nuove;
+		creaGrafo(matrice);
+		annoGrafo = anno;
+		avanzamento.accept(1.0);
+	}
+	
+	/**
+	 * Crea il grafo delle zone a partire dai loro centri (gli id sono quelli della zonizzazione corrente,
+	 * di default i distretti)
+	 */
+	public void creaGrafo(Map<Integer, LatLng> centri) {
+		creaGrafo(new DistanceMatrix(centri));
+		annoGrafo = null;
+		somme = null;
+	}
+	
+	private void creaGrafo(DistanceMatrix matrice) {
+		tempi = new TempiPercorrenza(matrice, k, profilo);
+		distanze = matrice;
+		Graph<Integer, DefaultWeightedEdge> g = new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+		int n = distanze.size();
+		for(int i = 0; i < n; i++) {
+			g.addVertex(distanze.getId(i));
+		}
+		
+		if(k <= 0 || k >= n - 1) {
+			// Grafo completo: ogni coppia di zone è collegata da un arco pesato con la distanza tra i centri.
+			// I vertici ci sono già e le coppie sono distinte, quindi gli archi vengono aggiunti senza altri controlli
+			for(int i = 0; i < n; i++) {
+				for(int j = i+1; j < n; j++) {
+					DefaultWeightedEdge e = g.addEdge(distanze.getId(i), distanze.getId(j));
+					g.setEdgeWeight(e, distanze.distanza(i, j));
+				}
+			}
+		} else {
+			// Grafo dei k vicini: ogni zona è collegata alle k più vicine (l'arco può esserci già, aggiunto
+			// dall'altra estremità), quindi gli archi sono al più n*k
+			for(int i = 0; i < n; i++) {
+				for(int r = 1; r <= k; r++) {
+					int j = distanze.vicino(i, r);
+					DefaultWeightedEdge e = g.addEdge(distanze.getId(i), distanze.getId(j));
+					if(e != null) {
+						g.setEdgeWeight(e, distanze.distanza(i, j));
+					}
 				}
-					
+			}
+		}
+		grafo = g;
+	}
+	
+	/**
+	 * Aggiunge alla rete corrente eventi arrivati dopo la sua costruzione (ad esempio da un flusso in tempo reale)
+	 * senza ricostruirla. I centri delle zone sono tenuti come somme delle coordinate e numero di eventi
+	 * dell'anno della rete: ogni evento di quell'anno sposta il centro della sua zona e vengono ricalcolate solo
+	 * le distanze da quella zona (O(V) invece delle O(V^2) di {@link #creaGrafo(int)}), i pesi dei suoi archi e i
+	 * suoi tempi di percorrenza. Sul grafo dei k vicini, dove archi e cammini minimi possono cambiare ovunque,
+	 * grafo e tempi vengono invece ricostruiti dalla matrice aggiornata, sempre senza interrogare il DB.
+	 * <p>
+	 * Le somme sono lette dal DB alla prima chiamata dopo la costruzione di una rete per un nuovo anno o una
+	 * nuova zonizzazione, e sono conservate se {@link #creaGrafo(int)} ricrea la rete per lo stesso anno con le
+	 * stesse zone. Da quella lettura in poi ogni evento inserito nel DB va passato a questo metodo una e una sola
+	 * volta, anche se nel frattempo la rete è stata ricreata, mentre gli eventi già nel DB al momento della lettura
+	 * non vanno passati, altrimenti sono contati due volte ({@link #ascolta(PipelineIngestione)} legge le somme
+	 * prima che la pipeline inserisca eventi). Gli eventi di altri anni o di zone che non sono nella rete vengono ignorati. Rete e matrice sono
+	 * modificate sul posto, quindi il metodo non va chiamato mentre è in corso una simulazione
+	 * (vedi {@link #aggiungiEventiAsync(Collection)}).
+	 * @return numero di eventi che hanno spostato il centro di una zona
+	 */
+	public int aggiungiEventi(Collection<Event> eventi) {
+		if(distanze == null || annoGrafo == null) {
+			return 0;
+		}
+		if(!leggiSomme()) {
+			return 0;
+		}
+		
+		boolean[] spostata = new boolean[distanze.size()];
+		int applicati = 0;
+		for(Event e : eventi) {
+			int i = distanze.indiceDi(zone.zona(e));
+			if(e.getReported_date().getYear() == annoGrafo && i >= 0) {
+				somme.aggiungi(i, e.getGeo_lat(), e.getGeo_lon());
+				spostata[i] = true;
+				applicati++;
 			}
 		}
 		
+		// Ogni zona toccata viene aggiornata una volta sola, anche se ha ricevuto più eventi
+		boolean ricostruisci = false;
+		for(int i = 0; i < spostata.length; i++) {
+			if(spostata[i]) {
+				distanze.spostaCentro(i, somme.getLat(i), somme.getLon(i));
+				if(tempi.aggiornaZona(i)) {
+					for(int j = 0; j < distanze.size(); j++) {
+						if(j != i) {
+							grafo.setEdgeWeight(grafo.getEdge(distanze.getId(i), distanze.getId(j)), distanze.distanza(i, j));
+						}
+					}
+				} else {
+					ricostruisci = true;
+				}
+			}
+		}
+		if(ricostruisci) {
+			creaGrafo(distanze);
+		}
+		return applicati;
+	}
+	
+	/**
+	 * Legge dal DB le somme dei centri della rete corrente, se non sono già state lette
+	 * @return false se la rete non ha un anno o la lettura non è riuscita
+	 */
+	private boolean leggiSomme() {
+		if(somme == null && distanze != null && annoGrafo != null) {
+			Map<String, double[]> dalDB = dao.sommeZone(zone.getGranularita(), annoGrafo);
+			if(dalDB != null) {
+				somme = new SommeCentri(distanze, zone, dalDB);
+			}
+		}
+		return somme != null;
+	}
+	
+	/**
+	 * Tiene aggiornata la rete corrente con gli eventi della pipeline. Le somme dei centri vengono lette
+	 * subito, prima che la pipeline inserisca eventi nel DB; ogni batch viene poi applicato sul thread delle
+	 * operazioni e la pipeline aspetta che sia applicato, quindi rallenta se il modello è occupato.
+	 * Mentre la pipeline è attiva la rete può essere ricreata per lo stesso anno e la stessa granularità, non
+	 * per altri: le somme verrebbero rilette con dentro eventi che la pipeline sta ancora per passare.
+	 * La pipeline inserisce gli eventi nella sorgente del modello (il DB, oppure l'{@link EventStore} di un
+	 * modello in memoria), quindi va chiamato prima di avviarla.
+	 */
+	public void ascolta(PipelineIngestione pipeline) {
+		pipeline.setDao(dao);
+		esegui(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return leggiSomme();
+			}
+		}).join();
+		pipeline.aggiungiDestinatario(new Consumer<List<Event>>() {
+			@Override
+			public void accept(List<Event> eventi) {
+				while(true) {
+					try {
+						aggiungiEventiAsync(eventi).get();
+						return;
+					} catch (ExecutionException e) {
+						if(!(e.getCause() instanceof RejectedExecutionException)) {
+							throw new RuntimeException(e.getCause());
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+					// Troppe operazioni in attesa: riprovo tra poco
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Granularità delle zone usata dalla prossima {@link #creaGrafo(int)}
+	 */
+	public void setGranularita(Granularita granularita) {
+		this.granularita = granularita;
+	}
+	
+	public Granularita getGranularita() {
+		return granularita;
+	}
+	
+	/**
+	 * Con k > 0 la prossima {@link #creaGrafo(int)} collega ogni zona solo alle k più vicine invece di creare
+	 * il grafo completo. Nella simulazione gli agenti si spostano allora lungo i cammini minimi del grafo.
+	 */
+	public void setViciniPerZona(int k) {
+		this.k = k;
+	}
+	
+	/**
+	 * Velocità degli agenti ora per ora (di default costante a {@link ProfiloVelocita#VELOCITA_PREDEFINITA});
+	 * vale subito anche per la rete corrente, senza ricalcolarla
+	 */
+	public void setProfiloVelocita(ProfiloVelocita profilo) {
+		this.profilo = profilo;
+		if(tempi != null) {
+			tempi = tempi.conProfilo(profilo);
+		}
+	}
+	
+	public ProfiloVelocita getProfiloVelocita() {
+		return profilo;
+	}
+	
+	public TempiPercorrenza getTempi() {
+		return tempi;
+	}
+	
+	/**
+	 * Con puntuale = true le simulazioni seguono la posizione di ogni agente e la distanza dal punto del crimine
+	 * (vedi {@link Simulatore#setPuntuale(boolean)})
+	 */
+	public void setPuntuale(boolean puntuale) {
+		this.puntuale = puntuale;
+	}
+	
+	public boolean isPuntuale() {
+		return puntuale;
+	}
+	
+	public Zonizzazione getZone() {
+		return zone;
+	}
+	
+	/**
+	 * Cache su disco delle reti già calcolate (null per disattivarla)
+	 */
+	public void setCache(CacheGrafi cache) {
+		this.cache = cache;
+	}
+	
+	public DistanceMatrix getDistanze() {
+		return distanze;
 	}
 	
 	public Integer getNVertici() {
@@ -73,9 +386,9 @@ public class Model {
 	public String viciniAdiacenti() {
 		String string = "";
 		for(Integer vp : grafo.vertexSet()) {
-			string += "Vertice partenza: " + vp + "\n";
+			string += "Vertice partenza: " + zone.nome(vp) + "\n";
 			for(Adiacenza vicino : getVicini(vp)) {
-				string += vicino.getVertice2() + " (" + vicino.getPeso() + ")\n";
+				string += zone.nome(vicino.getVertice2()) + " (" + vicino.getPeso() + ")\n";
 			}
 			string += "\n";
 		}
@@ -102,9 +415,514 @@ public class Model {
 		
 	}
 	
-	public int simula(Integer anno, Integer mese, Integer giorno, Integer N) {
-		Simulatore simulatore = new Simulatore();
-		simulatore.init(N, anno, mese, giorno, grafo);
-		return simulatore.run();
+	/**
+	 * Simulatore con la zonizzazione, la modalità e i tempi di percorrenza correnti
+	 */
+	private Simulatore nuovoSimulatore() {
+		return configura(new Simulatore(), zone, puntuale, tempi);
+	}
+	
+	/**
+	 * Come {@link #nuovoSimulatore()} con impostazioni già lette, per i simulatori creati su altri thread
+	 */
+	private static Simulatore configura(Simulatore simulatore, Zonizzazione zone, boolean puntuale, TempiPercorrenza tempi) {
+		simulatore.setZonizzazione(zone);
+		simulatore.setPuntuale(puntuale);
+		simulatore.setTempi(tempi);
+		return simulatore;
+	}
+	
+	public SimulationResult simula(Integer anno, Integer mese, Integer giorno, Integer N) {
+		Simulatore simulatore = nuovoSimulatore();
+		simulatore.init(N, anno, mese, giorno, distanze, dao);
+		simulatore.run();
+		return simulatore.getRisultato();
+	}
+	
+	/**
+	 * Simulazione continua dal giorno da al giorno a (inclusi), con i crimini letti un giorno alla volta
+	 */
+	public SimulationResult simula(LocalDate da, LocalDate a, Integer N) {
+		Simulatore simulatore = nuovoSimulatore();
+		simulatore.init(N, da, a, distanze, dao);
+		simulatore.run();
+		return simulatore.getRisultato();
+	}
+	
+	/**
+	 * Simulazione continua con i crimini forniti da una sorgente diversa dal DB, ad esempio un
+	 * {@link GeneratoreCrimini} per i test di carico
+	 */
+	public SimulationResult simula(SorgenteEventi sorgente, LocalDate da, LocalDate a, Integer N) {
+		Simulatore simulatore = nuovoSimulatore();
+		simulatore.init(N, da, a, distanze, sorgente);
+		simulatore.run();
+		return simulatore.getRisultato();
+	}
+	
+	/**
+	 * Simulazione online sulla rete corrente: i crimini vanno iniettati man mano che arrivano (ad esempio
+	 * registrandola come destinatario di una PipelineIngestione) e va avviata con {@link SimulatoreOnline#avvia}.
+	 * La centrale è la zona a minore criminalità nell'anno della rete. Il simulatore lavora su una copia di
+	 * distanze e tempi presa sul thread delle operazioni, quindi la rete può continuare a essere aggiornata
+	 * (ad esempio da {@link #ascolta(PipelineIngestione)}) o ricreata mentre la simulazione online è attiva,
+	 * senza che il simulatore ne veda gli aggiornamenti.
+	 * @param velocita secondi simulati per secondo reale (1 per il tempo reale)
+	 * @param listener riceve invii, arrivi e crimini mal gestiti sul thread del simulatore online
+	 */
+	public SimulatoreOnline creaSimulatoreOnline(final Integer N, double velocita, final SimulationListener listener) {
+		Simulatore simulatore = esegui(new Callable<Simulatore>() {
+			@Override
+			public Simulatore call() {
+				if(distanze == null) {
+					throw new IllegalStateException("Creare prima il grafo");
+				}
+				TempiPercorrenza copia = new TempiPercorrenza(tempi);
+				Simulatore simulatore = configura(new Simulatore(), zone, puntuale, copia);
+				simulatore.setListener(listener);
+				Integer centrale = annoGrafo != null ? zone.zonaMin(dao, annoGrafo) : distanze.getId(0);
+				simulatore.initOnline(N, centrale, copia.getDistanze());
+				return simulatore;
+			}
+		}).join();
+		return new SimulatoreOnline(simulatore, velocita, 1024);
+	}
+
+	/**
+	 * Generatore di crimini sintetici con il profilo orario, le zone e le categorie stimati dai crimini
+	 * del DB dal giorno da al giorno a (inclusi)
+	 */
+	public GeneratoreCrimini stimaGeneratore(LocalDate da, LocalDate a, long seed) {
+		return GeneratoreCrimini.stima(dao, da, a.plusDays(1), seed);
+	}
+	
+	public RisultatoBatch simulaBatch(Integer anno, Integer mese, Integer giorno, Integer N, int repliche, int thread, long seed) {
+		LocalDate giornata = LocalDate.of(anno, mese, giorno);
+		return simulaBatch(giornata, giornata, N, repliche, thread, seed);
+	}
+	
+	public RisultatoBatch simulaBatch(Integer anno, Integer mese, Integer giorno, Integer N, int repliche, int thread) {
+		return simulaBatch(anno, mese, giorno, N, repliche, thread, System.nanoTime());
+	}
+	
+	/**
+	 * Esegue più repliche indipendenti della simulazione dal giorno da al giorno a (inclusi) in parallelo.
+	 * I crimini del periodo e il distretto centrale vengono letti dal DB una sola volta e condivisi (in sola
+	 * lettura) tra le repliche; ogni replica ha il proprio generatore casuale con seme seed+i.
+	 */
+	public RisultatoBatch simulaBatch(LocalDate da, LocalDate a, Integer N, int repliche, int thread, long seed) {
+		return simulaBatch(da, a, N, repliche, thread, seed, NESSUN_AVANZAMENTO);
+	}
+	
+	private RisultatoBatch simulaBatch(LocalDate da, LocalDate a, Integer N, int repliche, int thread, long seed, DoubleConsumer avanzamento) {
+		EventStore crimini = inMemoria(da, a);
+		Integer centrale = zone.zonaMin(dao, da.getYear());
+		
+		ExecutorService executor = Executors.newFixedThreadPool(thread);
+		try {
+			return new RisultatoBatch(raccogli(avviaRepliche(executor, crimini, da, a, centrale, N, repliche, seed), avanzamento),
+					crimini.conta(da, a.plusDays(1)));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Come {@link #simulaBatch(LocalDate, LocalDate, Integer, int, int, long)} per più valori di N. I crimini
+	 * vengono letti una sola volta e le repliche di tutti i valori di N sono messe nello stesso pool, così i
+	 * thread restano occupati anche quando le repliche di un N finiscono prima delle altre.
+	 * @return N -> statistiche delle repliche, nell'ordine di valoriN
+	 */
+	public Map<Integer, RisultatoBatch> simulaBatch(LocalDate da, LocalDate a, List<Integer> valoriN, int repliche, int thread, long seed) {
+		EventStore crimini = inMemoria(da, a);
+		Integer centrale = zone.zonaMin(dao, da.getYear());
+		int nCrimini = crimini.conta(da, a.plusDays(1));
+		
+		ExecutorService executor = Executors.newFixedThreadPool(thread);
+		try {
+			List<List<Future<Integer>>> inCorso = new ArrayList<>();
+			for(Integer N : valoriN) {
+				inCorso.add(avviaRepliche(executor, crimini, da, a, centrale, N, repliche, seed));
+			}
+			Map<Integer, RisultatoBatch> risultati = new LinkedHashMap<>();
+			for(int k = 0; k < valoriN.size(); k++) {
+				risultati.put(valoriN.get(k), new RisultatoBatch(raccogli(inCorso.get(k), NESSUN_AVANZAMENTO), nCrimini));
+			}
+			return risultati;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Confronta più politiche di invio sugli stessi crimini dal giorno da al giorno a (inclusi), con N agenti.
+	 * Come in {@link #simulaBatch(LocalDate, LocalDate, List, int, int, long)} i crimini sono letti una sola volta
+	 * e le repliche di tutte le politiche girano nello stesso pool; ogni politica usa gli stessi semi, così le
+	 * differenze tra le politiche non dipendono dal caso. Le politiche valgono per la simulazione a zone, quindi
+	 * il confronto ignora la modalità puntuale.
+	 * @param politiche nome -> politica
+	 * @return nome -> tasso di mal gestiti e crimini simulati al secondo, nell'ordine di politiche
+	 */
+	public Map<String, RisultatoPolitica> confrontaPolitiche(LocalDate da, LocalDate a, Integer N, Map<String, DispatchPolicy> politiche,
+			int repliche, int thread, long seed) {
+		EventStore crimini = inMemoria(da, a);
+		Integer centrale = zone.zonaMin(dao, da.getYear());
+		int nCrimini = crimini.conta(da, a.plusDays(1));
+		
+		ExecutorService executor = Executors.newFixedThreadPool(thread);
+		try {
+			List<List<Future<Integer>>> inCorso = new ArrayList<>();
+			List<long[]> tempiRepliche = new ArrayList<>();
+			for(DispatchPolicy politica : politiche.values()) {
+				long[] nanosecondi = new long[repliche];
+				tempiRepliche.add(nanosecondi);
+				inCorso.add(avviaRepliche(executor, crimini, da, a, centrale, N, repliche, seed, politica, false, nanosecondi));
+			}
+			Map<String, RisultatoPolitica> risultati = new LinkedHashMap<>();
+			int k = 0;
+			for(Map.Entry<String, DispatchPolicy> e : politiche.entrySet()) {
+				int[] malGestiti = raccogli(inCorso.get(k), NESSUN_AVANZAMENTO);
+				long totale = 0;
+				for(long t : tempiRepliche.get(k)) {
+					totale += t;
+				}
+				risultati.put(e.getKey(), new RisultatoPolitica(e.getValue(), malGestiti, nCrimini, totale));
+				k++;
+			}
+			return risultati;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Cerca il numero minimo di agenti per cui, nel giorno indicato, la frazione media di crimini mal gestiti
+	 * non supera tassoTarget (es. 0.05 = 5%).
+	 */
+	public RisultatoDimensionamento dimensiona(Integer anno, Integer mese, Integer giorno, double tassoTarget, int repliche, int thread, long seed) {
+		LocalDate giornata = LocalDate.of(anno, mese, giorno);
+		return dimensiona(giornata, giornata, tassoTarget, repliche, thread, seed);
+	}
+	
+	/**
+	 * Come {@link #dimensiona(Integer, Integer, Integer, double, int, int, long)} sul periodo dal giorno da
+	 * al giorno a (inclusi), simulato in modo continuo
+	 */
+	public RisultatoDimensionamento dimensiona(LocalDate da, LocalDate a, double tassoTarget, int repliche, int thread, long seed) {
+		return dimensiona(inMemoria(da, a), da, a, zone.zonaMin(dao, da.getYear()), tassoTarget, repliche, thread, seed, NESSUN_AVANZAMENTO);
+	}
+	
+	/**
+	 * Ricerca del numero minimo di agenti su un insieme di crimini già caricato
+	 */
+	public RisultatoDimensionamento dimensiona(List<Event> crimini, Integer centrale, double tassoTarget, int repliche, int thread, long seed) {
+		EventStore store = EventStore.da(crimini);
+		if(store.size() == 0) {
+			RisultatoDimensionamento risultato = new RisultatoDimensionamento(tassoTarget, 0);
+			risultato.setNMinimo(0);
+			return risultato;
+		}
+		return dimensiona(store, store.getPrimoGiorno(), store.getUltimoGiorno(), centrale, tassoTarget, repliche, thread, seed, NESSUN_AVANZAMENTO);
+	}
+	
+	/**
+	 * La ricerca ha due fasi. Prima trova un limite superiore raddoppiando N a partire da 1 (con più thread
+	 * valuta insieme più raddoppi successivi), così non deve partire da un agente per crimine. Poi a ogni passo
+	 * divide l'intervallo [lo, hi) con punti interni valutati in parallelo (ogni punto con le sue repliche; con un
+	 * solo thread è una bisezione), quindi l'intervallo si restringe attorno al primo N che rispetta il target.
+	 * Tutte le valutazioni condividono la stessa copia in memoria dei crimini e la stessa matrice delle distanze
+	 * e usano gli stessi semi, così il confronto tra valori di N diversi non dipende dal caso.
+	 * L'avanzamento è stimato dall'ampiezza dell'intervallo rimasto, in scala logaritmica.
+	 */
+	private RisultatoDimensionamento dimensiona(EventStore crimini, LocalDate da, LocalDate a, Integer centrale, double tassoTarget, int repliche, int thread, long seed,
+			DoubleConsumer avanzamento) {
+		int nCrimini = crimini.conta(da, a.plusDays(1));
+		RisultatoDimensionamento risultato = new RisultatoDimensionamento(tassoTarget, nCrimini);
+		if(nCrimini == 0) {
+			risultato.setNMinimo(0);
+			return risultato;
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(thread);
+		try {
+			int lo = 0; // lo è il più piccolo N non ancora escluso, hi il più piccolo N noto che rispetta il target
+			int hi = -1;
+			int prossimo = 1;
+			while(hi < 0) {
+				List<Integer> candidati = new ArrayList<>();
+				for(int k = 0; k < thread && (candidati.isEmpty() || candidati.get(candidati.size()-1) < nCrimini); k++) {
+					candidati.add(prossimo);
+					prossimo = (int) Math.min((long) prossimo * 2, nCrimini);
+				}
+				valuta(executor, risultato, crimini, da, a, centrale, candidati, repliche, seed);
+				for(Integer candidato : candidati) {
+					if(risultato.rispettaTarget(candidato)) {
+						hi = candidato;
+						break;
+					}
+					lo = candidato + 1;
+				}
+				// Con un agente per crimine non si resta mai senza agenti liberi: se il target non è rispettato
+				// nemmeno così dipende solo dai tempi di percorrenza e non ha senso cercare oltre
+				if(hi < 0 && lo > nCrimini) {
+					return risultato;
+				}
+			}
+			avanzamento.accept(1.0 - Math.log(hi - lo + 1) / Math.log(nCrimini + 1));
+			
+			while(lo < hi) {
+				// Punti interni a [lo, hi): k*(hi-lo)/(punti+1) per k = 1..punti, con un solo thread il punto medio
+				int punti = Math.min(thread, hi - lo);
+				List<Integer> candidati = new ArrayList<>();
+				for(int k = 1; k <= punti; k++) {
+					int candidato = lo + (int) ((long) (hi - lo) * k / (punti + 1));
+					if(candidati.isEmpty() || candidati.get(candidati.size()-1) != candidato) {
+						candidati.add(candidato);
+					}
+				}
+				valuta(executor, risultato, crimini, da, a, centrale, candidati, repliche, seed);
+				
+				int nuovoHi = hi;
+				int nuovoLo = lo;
+				for(Integer candidato : candidati) {
+					if(risultato.rispettaTarget(candidato)) {
+						nuovoHi = candidato;
+						break;
+					}
+					nuovoLo = candidato + 1;
+				}
+				lo = nuovoLo;
+				hi = nuovoHi;
+				avanzamento.accept(1.0 - Math.log(hi - lo + 1) / Math.log(nCrimini + 1));
+			}
+			risultato.setNMinimo(hi);
+			return risultato;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Lancia insieme tutte le repliche di tutti i candidati, poi ne raccoglie i risultati
+	 */
+	private void valuta(ExecutorService executor, RisultatoDimensionamento risultato, EventStore crimini, LocalDate da, LocalDate a,
+			Integer centrale, List<Integer> candidati, int repliche, long seed) {
+		List<List<Future<Integer>>> inCorso = new ArrayList<>();
+		for(Integer candidato : candidati) {
+			inCorso.add(avviaRepliche(executor, crimini, da, a, centrale, candidato, repliche, seed));
+		}
+		for(int k = 0; k < candidati.size(); k++) {
+			risultato.aggiungi(candidati.get(k), new RisultatoBatch(raccogli(inCorso.get(k), NESSUN_AVANZAMENTO), risultato.getNCrimini()));
+		}
+	}
+	
+	private List<Future<Integer>> avviaRepliche(ExecutorService executor, EventStore crimini, LocalDate da, LocalDate a,
+			Integer centrale, int N, int repliche, long seed) {
+		return avviaRepliche(executor, crimini, da, a, centrale, N, repliche, seed, null, puntuale, null);
+	}
+	
+	/**
+	 * @param politica null per quella predefinita
+	 * @param nanosecondi se non è null, riceve il tempo di ogni replica (scritto prima che il suo future sia completato)
+	 */
+	private List<Future<Integer>> avviaRepliche(ExecutorService executor, final EventStore crimini, final LocalDate da, final LocalDate a,
+			final Integer centrale, final int N, int repliche, long seed, final DispatchPolicy politica, final boolean puntuale, final long[] nanosecondi) {
+		final DistanceMatrix distanze = this.distanze;
+		final Zonizzazione zone = this.zone;
+		final TempiPercorrenza tempi = this.tempi;
+		List<Future<Integer>> risultati = new ArrayList<>();
+		for(int i = 0; i < repliche; i++) {
+			final long semeReplica = seed + i;
+			final int replica = i;
+			risultati.add(executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					long inizio = System.nanoTime();
+					Simulatore simulatore = configura(new Simulatore(semeReplica), zone, puntuale, tempi);
+					simulatore.setPolitica(politica);
+					simulatore.init(N, da, a, centrale, distanze, crimini);
+					int malGestiti = simulatore.run();
+					if(nanosecondi != null) {
+						nanosecondi[replica] = System.nanoTime() - inizio;
+					}
+					return malGestiti;
+				}
+			}));
+		}
+		return risultati;
+	}
+	
+	/**
+	 * Copia in memoria i crimini dal giorno da al giorno a (inclusi), da condividere tra più simulazioni
+	 */
+	private EventStore inMemoria(LocalDate da, LocalDate a) {
+		return EventStore.carica(dao, da, a.plusDays(1));
+	}
+	
+	private static int[] raccogli(List<Future<Integer>> risultati, DoubleConsumer avanzamento) {
+		int[] valori = new int[risultati.size()];
+		try {
+			for(int i = 0; i < valori.length; i++) {
+				valori[i] = risultati.get(i).get();
+				avanzamento.accept((double) (i + 1) / valori.length);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return valori;
+	}
+	
+	// Operazioni asincrone: vengono eseguite una alla volta su un thread dedicato (il modello non è pensato per
+	// essere modificato da più thread insieme), con una coda limitata di operazioni in attesa. L'avanzamento è
+	// comunicato al DoubleConsumer (tra 0 e 1) dal thread dell'operazione; cancel(true) sul future interrompe
+	// l'operazione, che termina al primo controllo (nelle simulazioni a ogni giorno caricato).
+	
+	public CompletableFuture<List<Integer>> getAnniAsync() {
+		return esegui(new Callable<List<Integer>>() {
+			@Override
+			public List<Integer> call() {
+				return getAnni();
+			}
+		});
+	}
+	
+	public CompletableFuture<List<Integer>> getMesiAsync() {
+		return esegui(new Callable<List<Integer>>() {
+			@Override
+			public List<Integer> call() {
+				return getMesi();
+			}
+		});
+	}
+	
+	public CompletableFuture<List<Integer>> getGiorniAsync() {
+		return esegui(new Callable<List<Integer>>() {
+			@Override
+			public List<Integer> call() {
+				return getGiorni();
+			}
+		});
+	}
+	
+	public CompletableFuture<Void> creaGrafoAsync(final int anno, final DoubleConsumer avanzamento) {
+		return esegui(new Callable<Void>() {
+			@Override
+			public Void call() {
+				creaGrafo(anno, avanzamento);
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * {@link #aggiungiEventi(Collection)} sul thread delle operazioni, quindi mai durante una simulazione
+	 * avviata con i metodi asincroni
+	 */
+	public CompletableFuture<Integer> aggiungiEventiAsync(final Collection<Event> eventi) {
+		return esegui(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return aggiungiEventi(eventi);
+			}
+		});
+	}
+	
+	public CompletableFuture<SimulationResult> simulaAsync(final LocalDate da, final LocalDate a, final Integer N, final DoubleConsumer avanzamento) {
+		return esegui(new Callable<SimulationResult>() {
+			@Override
+			public SimulationResult call() {
+				Simulatore simulatore = nuovoSimulatore();
+				simulatore.setAvanzamento(avanzamento);
+				simulatore.init(N, da, a, distanze, dao);
+				simulatore.run();
+				return simulatore.getRisultato();
+			}
+		});
+	}
+	
+	public CompletableFuture<RisultatoBatch> simulaBatchAsync(final LocalDate da, final LocalDate a, final Integer N, final int repliche, final int thread,
+			final long seed, final DoubleConsumer avanzamento) {
+		return esegui(new Callable<RisultatoBatch>() {
+			@Override
+			public RisultatoBatch call() {
+				return simulaBatch(da, a, N, repliche, thread, seed, avanzamento);
+			}
+		});
+	}
+	
+	public CompletableFuture<RisultatoDimensionamento> dimensionaAsync(final LocalDate da, final LocalDate a, final double tassoTarget, final int repliche,
+			final int thread, final long seed, final DoubleConsumer avanzamento) {
+		return esegui(new Callable<RisultatoDimensionamento>() {
+			@Override
+			public RisultatoDimensionamento call() {
+				return dimensiona(inMemoria(da, a), da, a, zone.zonaMin(dao, da.getYear()), tassoTarget, repliche, thread, seed, avanzamento);
+			}
+		});
+	}
+	
+	/**
+	 * Esegue l'operazione sul thread del modello. Il future viene completato con il risultato o con l'eccezione
+	 * dell'operazione; se la coda è piena viene completato subito con RejectedExecutionException.
+	 */
+	private <T> CompletableFuture<T> esegui(final Callable<T> operazione) {
+		final AtomicReference<Future<?>> inEsecuzione = new AtomicReference<>();
+		final CompletableFuture<T> risultato = new CompletableFuture<T>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				boolean annullato = super.cancel(mayInterruptIfRunning);
+				Future<?> f = inEsecuzione.get();
+				if(f != null) {
+					f.cancel(mayInterruptIfRunning);
+				}
+				return annullato;
+			}
+		};
+		try {
+			inEsecuzione.set(getOperazioni().submit(new Runnable() {
+				@Override
+				public void run() {
+					if(risultato.isDone()) {
+						return; // annullata mentre era in attesa
+					}
+					try {
+						risultato.complete(operazione.call());
+					} catch (Throwable t) {
+						risultato.completeExceptionally(t);
+					}
+				}
+			}));
+		} catch (RuntimeException e) {
+			risultato.completeExceptionally(e);
+		}
+		return risultato;
+	}
+	
+	private synchronized ExecutorService getOperazioni() {
+		if(operazioni == null) {
+			final AtomicInteger contatore = new AtomicInteger();
+			operazioni = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_IN_ATTESA),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "model-" + contatore.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		return operazioni;
+	}
+	
+	/**
+	 * Interrompe le operazioni asincrone in corso e scarta quelle in attesa
+	 */
+	public synchronized void chiudi() {
+		if(operazioni != null) {
+			operazioni.shutdownNow();
+			operazioni = null;
+		}
 	}
 }
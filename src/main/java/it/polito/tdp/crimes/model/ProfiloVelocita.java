@@ -0,0 +1,54 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+
+/**
+ * Velocità media degli agenti (in km/h) per ogni ora del giorno, ad esempio più bassa nelle ore di punta
+ */
+public class ProfiloVelocita {
+	public static final double VELOCITA_PREDEFINITA = 60.0; // km/h, la velocità usata finora dalla simulazione
+
+	private final double[] velocita; // ora -> km/h
+
+	/**
+	 * @param velocita 24 velocità in km/h, una per ora a partire da mezzanotte
+	 */
+	public ProfiloVelocita(double[] velocita) {
+		if(velocita.length != 24) {
+			throw new IllegalArgumentException("Servono 24 velocità, una per ora: " + velocita.length);
+		}
+		for(double v : velocita) {
+			if(!(v > 0)) {
+				throw new IllegalArgumentException("Velocità non valida: " + v);
+			}
+		}
+		this.velocita = velocita.clone();
+	}
+
+	public static ProfiloVelocita costante(double velocita) {
+		double[] v = new double[24];
+		Arrays.fill(v, velocita);
+		return new ProfiloVelocita(v);
+	}
+
+	/**
+	 * Velocità normale tutto il giorno tranne nelle ore indicate (0-23), in cui si va alla velocità di punta
+	 */
+	public static ProfiloVelocita oreDiPunta(double normale, double punta, int... ore) {
+		double[] v = new double[24];
+		Arrays.fill(v, normale);
+		for(int ora : ore) {
+			v[ora] = punta;
+		}
+		return new ProfiloVelocita(v);
+	}
+
+	public double getVelocita(int ora) {
+		return velocita[ora];
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(velocita);
+	}
+}
@@ -0,0 +1,117 @@
+package it.polito.tdp.crimes.model;
+
+/**
+ * Istogramma dei tempi di risposta (in secondi) con classi log-lineari in stile HdrHistogram: i valori sotto
+ * 32 hanno una classe ciascuno, oltre ogni potenza di 2 è divisa in 16 classi di uguale ampiezza, quindi
+ * l'errore relativo è al più 1/16 su tutto l'intervallo. Registrare un valore è un incremento in un array.
+ */
+public class ResponseTimeHistogram {
+	private static final int LINEARI = 32; // valori 0..31 registrati esattamente
+	private static final int SOTTOCLASSI = 16; // classi per ogni potenza di 2 oltre LINEARI
+	private static final int CLASSI = LINEARI + SOTTOCLASSI * 59;
+
+	private final long[] conteggi = new long[CLASSI];
+	private long totale;
+	private long somma;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+
+	static int classe(long valore) {
+		if(valore < LINEARI) {
+			return (int) valore;
+		}
+		int esponente = 63 - Long.numberOfLeadingZeros(valore) - 4; // valore >>> esponente è in [16, 31]
+		return LINEARI + (esponente - 1) * SOTTOCLASSI + (int) (valore >>> esponente) - SOTTOCLASSI;
+	}
+
+	static long limiteInferiore(int classe) {
+		if(classe < LINEARI) {
+			return classe;
+		}
+		int esponente = (classe - LINEARI) / SOTTOCLASSI + 1;
+		long sotto = (classe - LINEARI) % SOTTOCLASSI + SOTTOCLASSI;
+		return sotto << esponente;
+	}
+
+	static long limiteSuperiore(int classe) {
+		if(classe < LINEARI) {
+			return classe;
+		}
+		long successivo = limiteInferiore(classe + 1);
+		return successivo <= 0 ? Long.MAX_VALUE : successivo - 1; // l'ultima classe arriva fino a Long.MAX_VALUE
+	}
+
+	/**
+	 * @param secondi tempo di risposta, i valori negativi sono registrati come 0
+	 */
+	public void registra(long secondi) {
+		long v = Math.max(secondi, 0);
+		conteggi[classe(v)]++;
+		totale++;
+		somma += v;
+		if(v < min) {
+			min = v;
+		}
+		if(v > max) {
+			max = v;
+		}
+	}
+
+	/**
+	 * Aggiunge a questo istogramma tutti i valori di un altro
+	 */
+	public void aggiungi(ResponseTimeHistogram altro) {
+		for(int i = 0; i < CLASSI; i++) {
+			conteggi[i] += altro.conteggi[i];
+		}
+		totale += altro.totale;
+		somma += altro.somma;
+		min = Math.min(min, altro.min);
+		max = Math.max(max, altro.max);
+	}
+
+	public long getConteggio() {
+		return totale;
+	}
+
+	public double getMedia() {
+		return totale == 0 ? 0.0 : (double) somma / totale;
+	}
+
+	public long getMin() {
+		return totale == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return totale == 0 ? 0 : max;
+	}
+
+	/**
+	 * Valore sotto cui cade la percentuale p dei tempi registrati (limite superiore della classe,
+	 * mai oltre il massimo registrato)
+	 * @param p percentuale tra 0 e 100
+	 */
+	public long getPercentile(double p) {
+		if(p < 0 || p > 100) {
+			throw new IllegalArgumentException("Percentile non valido: " + p);
+		}
+		if(totale == 0) {
+			return 0;
+		}
+		long rank = Math.max((long) Math.ceil(p / 100.0 * totale), 1);
+		long cumulato = 0;
+		for(int i = 0; i < CLASSI; i++) {
+			cumulato += conteggi[i];
+			if(cumulato >= rank) {
+				return Math.min(limiteSuperiore(i), max);
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d media=%.1fs P50=%ds P90=%ds P99=%ds max=%ds",
+				getConteggio(), getMedia(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+	}
+}
@@ -0,0 +1,85 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+
+/**
+ * Statistiche dei crimini mal gestiti su più repliche indipendenti della stessa simulazione
+ */
+public class RisultatoBatch {
+	private final int[] malGestiti; // un valore per replica, ordinati in modo crescente
+	private final int crimini; // crimini simulati in ogni replica (0 se non noto)
+
+	public RisultatoBatch(int[] malGestiti) {
+		this(malGestiti, 0);
+	}
+
+	public RisultatoBatch(int[] malGestiti, int crimini) {
+		this.malGestiti = Arrays.copyOf(malGestiti, malGestiti.length);
+		Arrays.sort(this.malGestiti);
+		this.crimini = crimini;
+	}
+
+	public int getCrimini() {
+		return crimini;
+	}
+
+	/**
+	 * Frazione media di crimini mal gestiti (0 se il numero di crimini non è noto)
+	 */
+	public double getTassoMedio() {
+		return crimini == 0 ? 0.0 : getMedia() / crimini;
+	}
+
+	public int getRepliche() {
+		return malGestiti.length;
+	}
+
+	public double getMedia() {
+		double somma = 0.0;
+		for(int m : malGestiti) {
+			somma += m;
+		}
+		return somma / malGestiti.length;
+	}
+
+	/**
+	 * Varianza campionaria (0 se c'è una sola replica)
+	 */
+	public double getVarianza() {
+		if(malGestiti.length < 2) {
+			return 0.0;
+		}
+		double media = getMedia();
+		double somma = 0.0;
+		for(int m : malGestiti) {
+			somma += (m - media) * (m - media);
+		}
+		return somma / (malGestiti.length - 1);
+	}
+
+	/**
+	 * Percentile con il metodo nearest-rank
+	 * @param p percentuale tra 0 e 100
+	 */
+	public int getPercentile(double p) {
+		if(p < 0 || p > 100) {
+			throw new IllegalArgumentException("Percentile non valido: " + p);
+		}
+		int rank = (int) Math.ceil(p / 100.0 * malGestiti.length);
+		return malGestiti[Math.max(rank, 1) - 1];
+	}
+
+	public int getMin() {
+		return malGestiti[0];
+	}
+
+	public int getMax() {
+		return malGestiti[malGestiti.length - 1];
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Repliche: %d\nMedia: %.2f\nVarianza: %.2f\nMin: %d\nP50: %d\nP90: %d\nP99: %d\nMax: %d",
+				getRepliche(), getMedia(), getVarianza(), getMin(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+	}
+}
@@ -0,0 +1,75 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Esito della ricerca del numero minimo di agenti: il valore trovato e tutte le valutazioni fatte lungo la ricerca
+ */
+public class RisultatoDimensionamento {
+	private final double tassoTarget;
+	private final int nCrimini;
+	private final SortedMap<Integer, RisultatoBatch> valutazioni; // N -> statistiche delle repliche
+	private int nMinimo; // -1 se il target non è raggiungibile
+
+	public RisultatoDimensionamento(double tassoTarget, int nCrimini) {
+		this.tassoTarget = tassoTarget;
+		this.nCrimini = nCrimini;
+		this.valutazioni = new TreeMap<>();
+		this.nMinimo = -1;
+	}
+
+	void aggiungi(int N, RisultatoBatch batch) {
+		valutazioni.put(N, batch);
+	}
+
+	void setNMinimo(int nMinimo) {
+		this.nMinimo = nMinimo;
+	}
+
+	/**
+	 * Frazione media di crimini mal gestiti con N agenti (N deve essere stato valutato)
+	 */
+	public double getTasso(int N) {
+		return nCrimini == 0 ? 0.0 : valutazioni.get(N).getMedia() / nCrimini;
+	}
+
+	public boolean rispettaTarget(int N) {
+		return getTasso(N) <= tassoTarget;
+	}
+
+	public boolean isTrovato() {
+		return nMinimo >= 0;
+	}
+
+	public int getNMinimo() {
+		return nMinimo;
+	}
+
+	public double getTassoTarget() {
+		return tassoTarget;
+	}
+
+	public int getNCrimini() {
+		return nCrimini;
+	}
+
+	public SortedMap<Integer, RisultatoBatch> getValutazioni() {
+		return valutazioni;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		if(isTrovato()) {
+			sb.append("N minimo: " + nMinimo + "\n");
+		} else {
+			sb.append("Target non raggiungibile\n");
+		}
+		for(Map.Entry<Integer, RisultatoBatch> e : valutazioni.entrySet()) {
+			sb.append(String.format("N=%d -> %.2f%% mal gestiti\n", e.getKey(), getTasso(e.getKey())*100));
+		}
+		return sb.toString();
+	}
+}
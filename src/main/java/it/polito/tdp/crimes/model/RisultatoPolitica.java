@@ -0,0 +1,39 @@
+package it.polito.tdp.crimes.model;
+
+/**
+ * Statistiche delle repliche di una politica di invio, con il tempo impiegato a simularle
+ */
+public class RisultatoPolitica extends RisultatoBatch {
+	private final DispatchPolicy politica;
+	private final long nanosecondi; // somma dei tempi delle singole repliche
+
+	public RisultatoPolitica(DispatchPolicy politica, int[] malGestiti, int crimini, long nanosecondi) {
+		super(malGestiti, crimini);
+		this.politica = politica;
+		this.nanosecondi = nanosecondi;
+	}
+
+	public DispatchPolicy getPolitica() {
+		return politica;
+	}
+
+	/**
+	 * Secondi di calcolo per replica, in media
+	 */
+	public double getSecondiPerReplica() {
+		return nanosecondi / 1e9 / getRepliche();
+	}
+
+	/**
+	 * Crimini simulati al secondo da un singolo thread
+	 */
+	public double getCriminiAlSecondo() {
+		return nanosecondi == 0 ? 0.0 : (double) getCrimini() * getRepliche() / (nanosecondi / 1e9);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Politica: %s\nTasso mal gestiti: %.4f\nCrimini al secondo: %.0f\n", politica, getTassoMedio(), getCriminiAlSecondo())
+				+ super.toString();
+	}
+}
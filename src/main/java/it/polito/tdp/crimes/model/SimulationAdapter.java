@@ -0,0 +1,27 @@
+package it.polito.tdp.crimes.model;
+
+/**
+ * Implementazione vuota di {@link SimulationListener}, da estendere ridefinendo solo i metodi che interessano
+ */
+public class SimulationAdapter implements SimulationListener {
+
+	@Override
+	public void crimine(long tempo, Event crimine) {
+	}
+
+	@Override
+	public void invio(long tempo, Event crimine, int partenza, long arrivo) {
+	}
+
+	@Override
+	public void arrivoAgente(long tempo, Event crimine) {
+	}
+
+	@Override
+	public void malGestito(long tempo, Event crimine) {
+	}
+
+	@Override
+	public void gestito(long tempo, Event crimine) {
+	}
+}
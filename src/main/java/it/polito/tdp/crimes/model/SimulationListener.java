@@ -0,0 +1,41 @@
+package it.polito.tdp.crimes.model;
+
+/**
+ * Riceve gli eventi della simulazione mentre vengono elaborati. Gli istanti sono in secondi dall'epoca
+ * (data locale letta come UTC). Le implementazioni sono chiamate dal thread della simulazione e devono
+ * restituire subito il controllo: chi deve fare I/O lo fa in modo asincrono (vedi {@link AsyncTraceWriter}).
+ */
+public interface SimulationListener {
+
+	/**
+	 * Listener che ignora tutti gli eventi, usato quando non serve la traccia
+	 */
+	SimulationListener NESSUNO = new SimulationAdapter();
+
+	/**
+	 * Un nuovo crimine è stato segnalato
+	 */
+	void crimine(long tempo, Event crimine);
+
+	/**
+	 * Decisione di invio: un agente parte verso il crimine
+	 * @param partenza id della zona da cui parte l'agente (in modalità puntuale il numero dell'agente)
+	 * @param arrivo istante previsto di arrivo sul posto
+	 */
+	void invio(long tempo, Event crimine, int partenza, long arrivo);
+
+	/**
+	 * L'agente inviato è arrivato sul posto
+	 */
+	void arrivoAgente(long tempo, Event crimine);
+
+	/**
+	 * Il crimine è mal gestito (nessun agente libero, oppure agente arrivato con più di 15 minuti di ritardo)
+	 */
+	void malGestito(long tempo, Event crimine);
+
+	/**
+	 * L'intervento è concluso e l'agente è di nuovo libero
+	 */
+	void gestito(long tempo, Event crimine);
+}
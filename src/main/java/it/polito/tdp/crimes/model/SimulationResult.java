@@ -0,0 +1,233 @@
+package it.polito.tdp.crimes.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Risultati di una simulazione: oltre al numero di crimini mal gestiti raccoglie la distribuzione dei tempi
+ * di risposta, i conteggi per distretto, l'utilizzo degli agenti ora per ora e il massimo riempimento della
+ * coda. Viene aggiornato dal simulatore con soli incrementi su array primitivi.
+ */
+public class SimulationResult {
+	private final int N;
+	private final DistanceMatrix distanze;
+
+	private int crimini;
+	private int malGestiti;
+	private int scartati; // crimini in zone che non sono nella rete, non simulati
+	private final ResponseTimeHistogram tempiRisposta = new ResponseTimeHistogram();
+	private final int[] inviiPerDistretto; // agenti inviati verso il distretto del crimine
+	private final int[] malGestitiPerDistretto;
+
+	// Utilizzo degli agenti: secondi-agente di lavoro per ogni ora a partire da inizio
+	private long inizio = Long.MIN_VALUE; // inizio dell'ora del primo evento
+	private long fine; // istante dell'ultimo evento
+	private long ultimoCambio; // istante dell'ultima variazione del numero di agenti occupati
+	private int occupati;
+	private long[] occupazioneOraria = new long[24];
+
+	private int maxCoda; // massimo numero di eventi in coda
+	private int maxCriminiAperti; // massimo numero di crimini segnalati e non ancora conclusi
+
+	SimulationResult(int N, DistanceMatrix distanze) {
+		this.N = N;
+		this.distanze = distanze;
+		this.inviiPerDistretto = new int[distanze.size()];
+		this.malGestitiPerDistretto = new int[distanze.size()];
+	}
+
+	/**
+	 * Da chiamare per ogni evento elaborato, in ordine di tempo
+	 */
+	void evento(long tempo, int coda, int criminiAperti) {
+		if(inizio == Long.MIN_VALUE) {
+			inizio = Math.floorDiv(tempo, 3600) * 3600;
+			ultimoCambio = tempo;
+		}
+		fine = tempo;
+		if(coda > maxCoda) {
+			maxCoda = coda;
+		}
+		if(criminiAperti > maxCriminiAperti) {
+			maxCriminiAperti = criminiAperti;
+		}
+	}
+
+	void crimine() {
+		crimini++;
+	}
+
+	void scartato() {
+		scartati++;
+	}
+
+	void invio(long tempo, int distretto) {
+		inviiPerDistretto[distretto]++;
+		cambiaOccupati(tempo, +1);
+	}
+
+	void arrivo(long tempoRisposta) {
+		tempiRisposta.registra(tempoRisposta);
+	}
+
+	void malGestito(int distretto) {
+		malGestiti++;
+		if(distretto >= 0) {
+			malGestitiPerDistretto[distretto]++;
+		}
+	}
+
+	void fineIntervento(long tempo) {
+		cambiaOccupati(tempo, -1);
+	}
+
+	/**
+	 * Aggiunge i secondi-agente lavorati dall'ultimo cambio, ripartiti sulle ore attraversate
+	 */
+	private void cambiaOccupati(long tempo, int delta) {
+		long t = ultimoCambio;
+		while(occupati > 0 && t < tempo) {
+			int ora = (int) ((t - inizio) / 3600);
+			long fineOra = inizio + (ora + 1) * 3600L;
+			long fineTratto = Math.min(fineOra, tempo);
+			if(ora >= occupazioneOraria.length) {
+				occupazioneOraria = Arrays.copyOf(occupazioneOraria, Math.max(occupazioneOraria.length * 2, ora + 1));
+			}
+			occupazioneOraria[ora] += occupati * (fineTratto - t);
+			t = fineTratto;
+		}
+		ultimoCambio = tempo;
+		occupati += delta;
+	}
+
+	public int getN() {
+		return N;
+	}
+
+	public int getCrimini() {
+		return crimini;
+	}
+
+	public int getMalGestiti() {
+		return malGestiti;
+	}
+
+	/**
+	 * Crimini scartati perché la loro zona non è nella rete (non contano in {@link #getCrimini()})
+	 */
+	public int getScartati() {
+		return scartati;
+	}
+
+	public double getTassoMalGestiti() {
+		return crimini == 0 ? 0.0 : (double) malGestiti / crimini;
+	}
+
+	/**
+	 * Tempi tra la segnalazione e l'arrivo dell'agente, per i crimini a cui è stato inviato un agente
+	 */
+	public ResponseTimeHistogram getTempiRisposta() {
+		return tempiRisposta;
+	}
+
+	/**
+	 * id distretto -> numero di agenti inviati verso il distretto
+	 */
+	public Map<Integer, Integer> getInviiPerDistretto() {
+		return perDistretto(inviiPerDistretto);
+	}
+
+	/**
+	 * id distretto -> numero di crimini mal gestiti nel distretto
+	 */
+	public Map<Integer, Integer> getMalGestitiPerDistretto() {
+		return perDistretto(malGestitiPerDistretto);
+	}
+
+	private Map<Integer, Integer> perDistretto(int[] valori) {
+		Map<Integer, Integer> result = new TreeMap<>();
+		for(int i = 0; i < valori.length; i++) {
+			result.put(distanze.getId(i), valori[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Numero di ore coperte dalla simulazione (dall'ora del primo evento a quella dell'ultimo)
+	 */
+	public int getOre() {
+		return inizio == Long.MIN_VALUE ? 0 : (int) ((fine - inizio) / 3600) + 1;
+	}
+
+	/**
+	 * Inizio dell'ora h della simulazione
+	 */
+	public LocalDateTime getInizioOra(int h) {
+		return LocalDateTime.ofEpochSecond(inizio + h * 3600L, 0, ZoneOffset.UTC);
+	}
+
+	/**
+	 * Frazione media degli agenti occupati nell'ora h (tra 0 e 1)
+	 */
+	public double getUtilizzo(int h) {
+		if(N == 0 || h >= occupazioneOraria.length) {
+			return 0.0;
+		}
+		return (double) occupazioneOraria[h] / (N * 3600.0);
+	}
+
+	/**
+	 * Frazione media degli agenti occupati su tutta la durata della simulazione
+	 */
+	public double getUtilizzoMedio() {
+		long durata = fine - inizio;
+		if(N == 0 || durata <= 0) {
+			return 0.0;
+		}
+		long totale = 0;
+		for(long o : occupazioneOraria) {
+			totale += o;
+		}
+		return (double) totale / ((double) N * durata);
+	}
+
+	public int getMaxCoda() {
+		return maxCoda;
+	}
+
+	public int getMaxCriminiAperti() {
+		return maxCriminiAperti;
+	}
+
+	/**
+	 * Riepilogo testuale per la visualizzazione
+	 */
+	public String riepilogo() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("CRIMINI: " + crimini + "\n");
+		if(scartati > 0) {
+			sb.append("CRIMINI SCARTATI (ZONA NON NELLA RETE): " + scartati + "\n");
+		}
+		sb.append("CRIMINI MAL GESTITI: " + malGestiti + String.format(" (%.1f%%)\n", getTassoMalGestiti() * 100));
+		sb.append("TEMPI DI RISPOSTA: " + tempiRisposta + "\n");
+		sb.append(String.format("UTILIZZO MEDIO AGENTI: %.1f%%\n", getUtilizzoMedio() * 100));
+		sb.append("MAX EVENTI IN CODA: " + maxCoda + ", MAX CRIMINI APERTI: " + maxCriminiAperti + "\n");
+		sb.append("DISTRETTO: INVII / MAL GESTITI\n");
+		for(int i = 0; i < inviiPerDistretto.length; i++) {
+			sb.append(distanze.getId(i) + ": " + inviiPerDistretto[i] + " / " + malGestitiPerDistretto[i] + "\n");
+		}
+		sb.append("UTILIZZO PER ORA\n");
+		for(int h = 0; h < getOre(); h++) {
+			sb.append(String.format("%s %.1f%%\n", getInizioOra(h), getUtilizzo(h) * 100));
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return riepilogo();
+	}
+}
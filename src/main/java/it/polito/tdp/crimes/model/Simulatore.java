@@ -1,14 +1,21 @@
 package it.polito.tdp.crimes.model;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 
-import org.jgrapht.Graph;
-import org.jgrapht.graph.DefaultWeightedEdge;
+import com.javadocmd.simplelatlng.LatLng;
+import com.javadocmd.simplelatlng.LatLngTool;
+import com.javadocmd.simplelatlng.util.LengthUnit;
 
 import it.polito.tdp.crimes.db.EventsDao;
+import it.polito.tdp.crimes.db.SorgenteEventi;
 import it.polito.tdp.crimes.model.Evento.EventType;
 
 public class Simulatore {
@@ -22,6 +29,7 @@ public class Simulatore {
 	//    2.2 Controllo se il crimine è MAL GESTITO se l'agente arriva con 15 minuti di ritardo
 	// 3) Il crimine è terminato
 	//    3.1 Bisogna settare l'agente come non più occupato, cioè l'agente torna ad essere disponibile
+	//    3.2 Se la politica di invio lo fa rientrare in un'altra zona, l'agente torna disponibile solo quando ci ARRIVA (RIENTRO)
 	
 	// Strutture dati
 	// Input utente
@@ -29,135 +37,524 @@ public class Simulatore {
 	private Integer anno;
 	private Integer mese;
 	private Integer giorno;
+	private LocalDate da; // primo giorno simulato
+	private LocalDate a; // ultimo giorno simulato (incluso)
 	
 	// Stato del sistema
-	private Graph<Integer, DefaultWeightedEdge> grafo;
-	// Uso una mappa che come key ha il numero del distretto e come value ha il numero di agenti disponibili nel distretto
-	private Map<Integer, Integer> agenti; // mappa distretto -> numero agenti liberi
+	private DistanceMatrix distanze;
+	// Array indicizzato con l'indice denso del distretto nella matrice delle distanze: contiene il numero di agenti disponibili nel distretto
+	private int[] agenti; // indice distretto -> numero agenti liberi
+	private int liberi; // numero totale di agenti liberi
+	private TempiPercorrenza tempi; // impostati da fuori, oppure in linea d'aria a velocità costante
+	private TempiPercorrenza percorsi; // quelli usati dalla simulazione in corso
+	private int centrale; // indice denso della zona della centrale
+	private DispatchPolicy politica = DispatchPolicies.piuVicino();
+	private final DispatchPolicy.Stato stato = new StatoAgenti(); // quello che la politica vede di questo simulatore
 	
-	// Coda degli eventi
-	private PriorityQueue<Evento> queue;
+	// Modalità puntuale: ogni agente ha una posizione vera e va alle coordinate del crimine. Gli agenti liberi
+	// sono in un indice spaziale, quindi la ricerca del più vicino non scorre tutti gli agenti
+	private boolean puntuale;
+	private GrigliaAgenti griglia; // null se la modalità puntuale non è attiva
+	private int[] agenteCrimine; // slot -> agente inviato sul crimine (solo in modalità puntuale)
+	private int[] zonaRientro; // slot -> zona in cui l'agente del crimine sta rientrando
+	
+	// Coda degli eventi: heap su array primitivi ordinato per istante (secondi dall'epoca). Ogni evento in coda
+	// si riferisce a uno slot di crimini[]: gli slot dei crimini conclusi vengono riusati
+	private CodaEventi queue;
+	private Event[] crimini; // slot -> crimine
+	private long[] segnalati; // slot -> istante della segnalazione del crimine
+	private int[] zonaCrimine; // slot -> indice denso della zona del crimine (calcolato una volta sola)
+	private int[] slotLiberi; // pila degli slot non usati
+	private int nSlotLiberi;
+	
+	// Sorgente dei crimini per la simulazione su più giorni: i crimini di un giorno vengono letti solo quando
+	// il tempo simulato lo raggiunge, così la coda contiene al più un giorno di crimini più gli interventi in corso
+	private SorgenteEventi sorgente;
+	private LocalDate prossimoGiorno; // primo giorno non ancora caricato nella coda
 	
 	//Output
 	private Integer malGestiti;
+	private SimulationResult risultato;
 	
-	public void init(Integer N, Integer anno, Integer mese, Integer giorno, Graph<Integer, DefaultWeightedEdge> grafo) {
-		this.N = N;
+	// Generatore usato per la durata degli interventi: ogni simulatore ha il proprio, così più repliche
+	// possono girare in parallelo e, fissato il seme, una replica è riproducibile
+	private Random random;
+	
+	public Simulatore() {
+		random = new Random();
+	}
+	
+	public Simulatore(long seed) {
+		random = new Random(seed);
+	}
+	
+	// Zone in cui si muovono gli agenti: gli id della matrice delle distanze sono id di zone a questa granularità
+	private Zonizzazione zone = Zonizzazione.DISTRETTI;
+	
+	public void setZonizzazione(Zonizzazione zone) {
+		this.zone = zone;
+	}
+	
+	/**
+	 * Con puntuale = true gli agenti partono tutti dal centro della centrale, vanno alle coordinate dei crimini
+	 * e restano lì quando tornano liberi; i tempi di percorrenza sono calcolati tra i punti invece che tra i
+	 * centri delle zone. Va impostato prima di init.
+	 */
+	public void setPuntuale(boolean puntuale) {
+		this.puntuale = puntuale;
+	}
+	
+	/**
+	 * Tempi di percorrenza tra le zone, calcolati sulla stessa matrice delle distanze passata a init. Se non
+	 * sono impostati gli agenti vanno in linea d'aria alla velocità predefinita.
+	 */
+	public void setTempi(TempiPercorrenza tempi) {
+		this.tempi = tempi;
+	}
+	
+	/**
+	 * Politica con cui scegliere la zona da cui parte l'agente e quella in cui torna libero (di default
+	 * l'agente libero più vicino, che resta nella zona del crimine). Vale solo per la simulazione a zone.
+	 */
+	public void setPolitica(DispatchPolicy politica) {
+		this.politica = politica == null ? DispatchPolicies.piuVicino() : politica;
+	}
+	
+	// Chi riceve gli eventi della simulazione (di default nessuno)
+	private SimulationListener listener = SimulationListener.NESSUNO;
+	
+	public void setListener(SimulationListener listener) {
+		this.listener = listener == null ? SimulationListener.NESSUNO : listener;
+	}
+	
+	// Riceve la frazione di giorni già caricati nella simulazione su più giorni (tra 0 e 1)
+	private DoubleConsumer avanzamento;
+	
+	public void setAvanzamento(DoubleConsumer avanzamento) {
+		this.avanzamento = avanzamento;
+	}
+	
+	public void init(Integer N, Integer anno, Integer mese, Integer giorno, DistanceMatrix distanze) {
+		init(N, anno, mese, giorno, distanze, new EventsDao());
+	}
+	
+	/**
+	 * Come {@link #init(Integer, Integer, Integer, Integer, DistanceMatrix)}, leggendo i crimini dal DAO indicato
+	 * (ad esempio un EventStore già caricato in memoria)
+	 */
+	public void init(Integer N, Integer anno, Integer mese, Integer giorno, DistanceMatrix distanze, SorgenteEventi dao) {
 		this.anno = anno;
 		this.mese = mese;
 		this.giorno = giorno;
-		this.grafo = grafo;
-		malGestiti = 0;
-		agenti = new HashMap<>();
-		for(Integer d : grafo.vertexSet()) {
-			// I vertici sono i distretti quindi per ogni distretto metto che all'inizio ci sono 0 agenti
-			agenti.put(d, 0);
-		}
 		
+		LocalDate giornata = LocalDate.of(anno, mese, giorno);
+		init(N, giornata, giornata, distanze, dao);
+	}
+	
+	/**
+	 * Simulazione continua dal giorno da al giorno a (inclusi): gli agenti non tornano in centrale a mezzanotte
+	 * e i crimini vengono letti dal DAO un giorno alla volta, man mano che il tempo simulato avanza.
+	 * La centrale è la zona a minore criminalità nell'anno del primo giorno.
+	 */
+	public void init(Integer N, LocalDate da, LocalDate a, DistanceMatrix distanze, SorgenteEventi dao) {
 		// Devo scegliere dov'è la centrale e mettere N agenti in quel distretto. Dalla centrale partiranno poi gli agenti per andare nei
 		// distretti in cui si verifica un certo evento
-		EventsDao dao = new EventsDao();
-		Integer minD = dao.getDistrettoMin(anno); // Distretto a minore criminalità nell'anno selezionato dall'utente
-		agenti.put(minD, N); // In questo distretto andiamo a mettere gli N agenti inizialmente in centrale
+		Integer minD = zone.zonaMin(dao, da.getYear()); // Zona a minore criminalità nell'anno selezionato dall'utente
+		init(N, da, a, minD, distanze, dao);
+	}
 	
-		// Creo e inizializzo la coda
-		queue = new PriorityQueue<Evento>();
+	/**
+	 * Come {@link #init(Integer, LocalDate, LocalDate, DistanceMatrix, SorgenteEventi)} con la centrale già scelta.
+	 * Il DAO viene solo letto: più simulatori possono condividere lo stesso EventStore.
+	 */
+	public void init(Integer N, LocalDate da, LocalDate a, Integer centrale, DistanceMatrix distanze, SorgenteEventi dao) {
+		this.da = da;
+		this.a = a;
+		preparaAgenti(N, centrale, distanze);
 		
-		for(Event event : dao.listAllEventsByDate(anno, mese, giorno)) {
-			queue.add(new Evento(EventType.CRIMINE, event.getReported_date(), event));
+		// I crimini arrivano dal DB uno alla volta e finiscono direttamente nella coda: per ora carico solo il primo giorno
+		sorgente = dao;
+		prossimoGiorno = da;
+		caricaGiorno();
+	}
+	
+	/**
+	 * Inizializza la simulazione con crimini e distretto centrale già caricati: la lista e la matrice
+	 * delle distanze vengono solo lette, quindi possono essere condivise tra più simulatori
+	 */
+	public void init(Integer N, List<Event> crimini, Integer centrale, DistanceMatrix distanze) {
+		preparaAgenti(N, centrale, distanze);
+		for(Event event : crimini) {
+			aggiungiCrimine(event);
 		}
 	}
 	
-	public int run() {
-		Evento e;
-		while((e = queue.poll()) != null) {
-			switch (e.getType()) {
-				case CRIMINE:
-					System.out.println("NUOVO CRIMINE! " + e.getCrimine().getIncident_id());
-					
-					// Cerco l'agente libero più vicino al distretto in cui si è verificato il crimine
-					Integer partenza = null;
-					partenza = cercaAgente(e.getCrimine().getDistrict_id()); // Metodo che mi da il distretto da cui partirà l'agente
-					if(partenza != null) {
-						// C'è un agente libero in partenza -> lo setto come occupato
-						agenti.put(partenza, agenti.get(partenza)-1);
-					
-						// Cerco di capire quanto ci metterà l'agente libero ad arrivare sul posto
-						Double distanza;
-						if(partenza.equals(e.getCrimine().getDistrict_id())) {
-							// Se il distretto di partenza è lo stesso in cui si è verificato il crimine allora la distanza è nulla
-							distanza = 0.0;
-						} else {
-							distanza = grafo.getEdgeWeight(grafo.getEdge(partenza, e.getCrimine().getDistrict_id()));
-						}
-						
-						Long seconds = (long)((distanza*1000)/(60/3.6)); // Velocità = spazio/tempo
-						queue.add(new Evento(EventType.ARRIVA_AGENTE, e.getData().plusSeconds(seconds), e.getCrimine()));
-					} else {
-						// Non c'è nessun agente libero al momento -> crimine MAL GESTITO
-						System.out.println("CRIMINE " + e.getCrimine().getIncident_id() + " MAL GESTITO");
-						malGestiti++;
-					}
-					break;
-	
-				case ARRIVA_AGENTE: 
-					System.out.println("ARRIVA AGENTE PER CRIMINE! " + e.getCrimine().getIncident_id());
-					Long duration = getDurata(e.getCrimine().getOffense_category_id());
-					queue.add(new Evento(EventType.GESTITO, e.getData().plusSeconds(duration), e.getCrimine()));
-					
-					// Controllo se il crimine è mal gestito, ossia se l'agente arriva con un ritardo di 15 minuti
-					if(e.getData().isAfter(e.getCrimine().getReported_date().plusMinutes(15))) {
-						System.out.println("CRIMINE " + e.getCrimine().getIncident_id() + " MAL GESTITO");
-						malGestiti++;
-					}
-					break;
-					
-				case GESTITO:
-					System.out.println("CRIMINE " + e.getCrimine().getIncident_id() + " GESTITO");
-					agenti.put(e.getCrimine().getDistrict_id(), agenti.get(e.getCrimine().getDistrict_id())+1);
-					break;
-					
-				default:
-					break;
+	private void preparaAgenti(Integer N, Integer centrale, DistanceMatrix distanze) {
+		this.N = N;
+		this.distanze = distanze;
+		if(tempi != null && tempi.getDistanze() != distanze) {
+			throw new IllegalArgumentException("Tempi di percorrenza calcolati su un'altra rete");
+		}
+		percorsi = tempi != null ? tempi : new TempiPercorrenza(distanze);
+		malGestiti = 0;
+		risultato = new SimulationResult(N, distanze);
+		// All'inizio in ogni distretto ci sono 0 agenti
+		agenti = new int[distanze.size()];
+		this.centrale = distanze.indiceDi(centrale);
+		agenti[this.centrale] = N; // In questo distretto andiamo a mettere gli N agenti inizialmente in centrale
+		liberi = N;
+		griglia = puntuale ? creaGriglia(this.centrale) : null;
+	
+		// Creo la coda
+		queue = new CodaEventi();
+		crimini = new Event[0];
+		segnalati = new long[0];
+		zonaCrimine = new int[0];
+		agenteCrimine = new int[0];
+		zonaRientro = new int[0];
+		slotLiberi = new int[0];
+		nSlotLiberi = 0;
+		sorgente = null;
+		tempoCorrente = Long.MIN_VALUE;
+	}
+	
+	/**
+	 * Griglia sull'area coperta dai centri delle zone (esclusi quelli a 0,0 delle zone senza eventi nell'anno)
+	 * con tutti gli agenti liberi nel centro della centrale
+	 */
+	private GrigliaAgenti creaGriglia(int centrale) {
+		double latMin = distanze.getLat(centrale), latMax = latMin;
+		double lonMin = distanze.getLon(centrale), lonMax = lonMin;
+		for(int i = 0; i < distanze.size(); i++) {
+			if(distanze.getLat(i) != 0.0 || distanze.getLon(i) != 0.0) {
+				latMin = Math.min(latMin, distanze.getLat(i));
+				latMax = Math.max(latMax, distanze.getLat(i));
+				lonMin = Math.min(lonMin, distanze.getLon(i));
+				lonMax = Math.max(lonMax, distanze.getLon(i));
+			}
+		}
+		GrigliaAgenti g = new GrigliaAgenti(latMin, latMax, lonMin, lonMax, N);
+		for(int agente = 0; agente < N; agente++) {
+			g.libera(agente, distanze.getLat(centrale), distanze.getLon(centrale));
+		}
+		return g;
+	}
+	
+	/**
+	 * Mette in coda i crimini di prossimoGiorno e passa al giorno successivo
+	 */
+	private void caricaGiorno() {
+		// La simulazione può essere annullata interrompendo il thread che la esegue
+		if(Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Simulazione interrotta");
+		}
+		sorgente.forEachEventByDate(prossimoGiorno, prossimoGiorno.plusDays(1), new Consumer<Event>() {
+			@Override
+			public void accept(Event event) {
+				aggiungiCrimine(event);
+			}
+		});
+		prossimoGiorno = prossimoGiorno.plusDays(1);
+		if(avanzamento != null) {
+			avanzamento.accept((double) (prossimoGiorno.toEpochDay() - da.toEpochDay()) / (a.toEpochDay() - da.toEpochDay() + 1));
+		}
+	}
+	
+	/**
+	 * Nella simulazione su più giorni carica i giorni successivi quando la coda è vuota o il prossimo evento
+	 * in coda non precede la mezzanotte del primo giorno non ancora caricato
+	 */
+	private void alimentaCoda() {
+		while(sorgente != null && !prossimoGiorno.isAfter(a)
+				&& (queue.isEmpty() || queue.tempoTesta() >= secondi(prossimoGiorno.atStartOfDay()))) {
+			caricaGiorno();
+		}
+	}
+	
+	private void aggiungiCrimine(Event event) {
+		int zona = distanze.indiceDi(zone.zona(event));
+		if(zona < 0) {
+			// Zona non nella rete (ad esempio precinto o quartiere mancante): il crimine viene scartato
+			risultato.scartato();
+			return;
+		}
+		int slot = allocaSlot(event, zona);
+		queue.aggiungi(segnalati[slot], EventType.CRIMINE, slot);
+	}
+	
+	private int allocaSlot(Event event, int zona) {
+		if(nSlotLiberi == 0) {
+			// Raddoppio gli slot e metto i nuovi nella pila dei liberi
+			int vecchi = crimini.length;
+			int nuovi = Math.max(vecchi * 2, 64);
+			crimini = Arrays.copyOf(crimini, nuovi);
+			segnalati = Arrays.copyOf(segnalati, nuovi);
+			zonaCrimine = Arrays.copyOf(zonaCrimine, nuovi);
+			agenteCrimine = Arrays.copyOf(agenteCrimine, nuovi);
+			zonaRientro = Arrays.copyOf(zonaRientro, nuovi);
+			slotLiberi = Arrays.copyOf(slotLiberi, nuovi);
+			for(int s = nuovi - 1; s >= vecchi; s--) {
+				slotLiberi[nSlotLiberi++] = s;
 			}
 		}
+		int slot = slotLiberi[--nSlotLiberi];
+		crimini[slot] = event;
+		segnalati[slot] = secondi(event.getReported_date());
+		zonaCrimine[slot] = zona;
+		return slot;
+	}
+	
+	private void liberaSlot(int slot) {
+		crimini[slot] = null;
+		slotLiberi[nSlotLiberi++] = slot;
+	}
+	
+	private static long secondi(LocalDateTime data) {
+		return data.toEpochSecond(ZoneOffset.UTC);
+	}
+	
+	/**
+	 * Il prossimo evento in coda, come oggetto Evento (solo per debug: il ciclo della simulazione non lo usa)
+	 * @return null se la coda è vuota
+	 */
+	public Evento getProssimoEvento() {
+		if(queue == null || queue.isEmpty()) {
+			return null;
+		}
+		return new Evento(queue.tipoTesta(), LocalDateTime.ofEpochSecond(queue.tempoTesta(), 0, ZoneOffset.UTC), crimini[queue.crimineTesta()]);
+	}
+	
+	public int run() {
+		alimentaCoda();
+		while(!queue.isEmpty()) {
+			elaboraProssimo();
+			alimentaCoda();
+		}
 		
 		return malGestiti;
 	}
+	
+	// Modalità online: i crimini arrivano uno alla volta con inserisci e il tempo simulato avanza con avanzaFino,
+	// quindi la simulazione può seguire un flusso di eventi in tempo reale (vedi SimulatoreOnline)
+	
+	private long tempoCorrente = Long.MIN_VALUE; // istante dell'ultimo evento elaborato
+	
+	/**
+	 * Prepara la simulazione online con N agenti nella zona centrale e la coda vuota
+	 */
+	public void initOnline(Integer N, Integer centrale, DistanceMatrix distanze) {
+		preparaAgenti(N, centrale, distanze);
+	}
+	
+	/**
+	 * Aggiunge un crimine alla simulazione online. Un crimine segnalato prima del tempo simulato corrente
+	 * (arrivato in ritardo) viene elaborato subito, ma il tempo di risposta parte comunque dalla segnalazione.
+	 * @return false se la zona del crimine non è nella rete (il crimine viene scartato)
+	 */
+	public boolean inserisci(Event crimine) {
+		int zona = distanze.indiceDi(zone.zona(crimine));
+		if(zona < 0) {
+			risultato.scartato();
+			return false;
+		}
+		int slot = allocaSlot(crimine, zona);
+		queue.aggiungi(Math.max(segnalati[slot], tempoCorrente), EventType.CRIMINE, slot);
+		return true;
+	}
+	
+	/**
+	 * Elabora tutti gli eventi in coda fino all'istante indicato (secondi dall'epoca, incluso)
+	 * @return il numero di eventi elaborati
+	 */
+	public int avanzaFino(long istante) {
+		int elaborati = 0;
+		while(!queue.isEmpty() && queue.tempoTesta() <= istante) {
+			elaboraProssimo();
+			elaborati++;
+		}
+		return elaborati;
+	}
+	
+	/**
+	 * Istante del prossimo evento in coda, Long.MAX_VALUE se la coda è vuota
+	 */
+	public long getProssimoIstante() {
+		return queue.isEmpty() ? Long.MAX_VALUE : queue.tempoTesta();
+	}
+	
+	public int getMalGestiti() {
+		return malGestiti;
+	}
+	
+	private void elaboraProssimo() {
+		long t = queue.tempoTesta();
+		EventType tipo = queue.tipoTesta();
+		int slot = queue.crimineTesta();
+		queue.rimuoviTesta();
+		tempoCorrente = t;
+		Event crimine = crimini[slot];
+		int arrivo = zonaCrimine[slot];
+		risultato.evento(t, queue.size() + 1, crimini.length - nSlotLiberi);
+		
+		switch (tipo) {
+			case CRIMINE:
+				listener.crimine(t, crimine);
+				risultato.crimine();
+				
+				long seconds = -1; // tempo di viaggio dell'agente inviato, -1 se non c'è nessun agente libero
+				if(griglia != null) {
+					// Cerco l'agente libero più vicino al punto in cui si è verificato il crimine
+					int agente = griglia.piuVicino(crimine.getGeo_lat(), crimine.getGeo_lon());
+					if(agente >= 0) {
+						double distanza = LatLngTool.distance(new LatLng(griglia.getLat(agente), griglia.getLon(agente)),
+								new LatLng(crimine.getGeo_lat(), crimine.getGeo_lon()), LengthUnit.KILOMETER);
+						seconds = percorsi.tempo(distanza, t);
+						griglia.occupa(agente);
+						agenteCrimine[slot] = agente;
+						listener.invio(t, crimine, agente, t + seconds);
+					}
+				} else {
+					// La politica di invio sceglie il distretto da cui parte l'agente (di default il più vicino con un agente libero)
+					int partenza = cercaAgente(crimine, arrivo, t); // Metodo che mi da l'indice del distretto da cui partirà l'agente
+					if(partenza >= 0) {
+						agenti[partenza]--;
+						// (se il distretto di partenza è lo stesso in cui si è verificato il crimine la distanza è nulla)
+						seconds = percorsi.tempo(partenza, arrivo, t);
+						listener.invio(t, crimine, distanze.getId(partenza), t + seconds);
+					}
+				}
+				if(seconds >= 0) {
+					// C'è un agente libero in partenza -> lo setto come occupato
+					liberi--;
+					risultato.invio(t, arrivo);
+				
+					// L'agente libero arriverà sul posto dopo il tempo di percorrenza all'ora della partenza
+					queue.aggiungi(t + seconds, EventType.ARRIVA_AGENTE, slot);
+				} else {
+					// Non c'è nessun agente libero al momento -> crimine MAL GESTITO
+					listener.malGestito(t, crimine);
+					malGestiti++;
+					risultato.malGestito(arrivo);
+					liberaSlot(slot);
+				}
+				break;
+	
+			case ARRIVA_AGENTE: 
+				listener.arrivoAgente(t, crimine);
+				risultato.arrivo(t - segnalati[slot]);
+				long duration = getDurata(crimine.getOffense_category_id());
+				queue.aggiungi(t + duration, EventType.GESTITO, slot);
+				
+				// Controllo se il crimine è mal gestito, ossia se l'agente arriva con un ritardo di 15 minuti
+				if(t > segnalati[slot] + 15*60) {
+					listener.malGestito(t, crimine);
+					malGestiti++;
+					risultato.malGestito(arrivo);
+				}
+				break;
+				
+			case GESTITO:
+				listener.gestito(t, crimine);
+				if(griglia != null) {
+					// L'agente torna libero dove ha concluso l'intervento
+					griglia.libera(agenteCrimine[slot], crimine.getGeo_lat(), crimine.getGeo_lon());
+				} else {
+					int rientro = politica.rientro(stato, crimine, arrivo, t);
+					if(rientro != arrivo) {
+						// L'agente resta occupato finché non arriva nella zona di rientro
+						zonaRientro[slot] = rientro;
+						queue.aggiungi(t + percorsi.tempo(arrivo, rientro, t), EventType.RIENTRO, slot);
+						break;
+					}
+					agenti[arrivo]++;
+				}
+				liberi++;
+				risultato.fineIntervento(t);
+				liberaSlot(slot);
+				break;
+				
+			case RIENTRO:
+				agenti[zonaRientro[slot]]++;
+				liberi++;
+				risultato.fineIntervento(t);
+				liberaSlot(slot);
+				break;
+				
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Risultati dettagliati dell'ultima simulazione eseguita con {@link #run()}
+	 */
+	public SimulationResult getRisultato() {
+		return risultato;
+	}
 
-	private Long getDurata(String offense_category_id) {
+	private long getDurata(String offense_category_id) {
 		if(offense_category_id.equals("all_other_crimes")) {
-			Random random = new Random();
 			if(random.nextDouble() > 0.5) {
-				return Long.valueOf(2*60+60);
+				return 2*60+60;
 			}
 			else {
-				return Long.valueOf(1*60+60);
+				return 1*60+60;
 			}
 		}
 		else 
-			return Long.valueOf(2*60+60);
+			return 2*60+60;
 	}
 
-	private Integer cercaAgente(Integer district_id) {
-		Double distanza = Double.MAX_VALUE; // Devo trovare il minimo quindi parto da una distanza elevata
-		Integer distretto = null;
+	/**
+	 * Distretto da cui parte l'agente per un crimine nel distretto arrivo secondo la politica di invio
+	 * @return -1 se non parte nessuno
+	 */
+	int cercaAgente(Event crimine, int arrivo, long t) {
+		if(liberi == 0) {
+			// Nessun agente libero in tutta la città: inutile chiedere alla politica
+			return -1;
+		}
+		int partenza = politica.partenza(stato, crimine, arrivo, t);
+		if(partenza >= 0 && agenti[partenza] <= 0) {
+			throw new IllegalStateException("La politica " + politica + " invia un agente da una zona senza agenti liberi: " + distanze.getId(partenza));
+		}
+		return partenza;
+	}
+	
+	private class StatoAgenti implements DispatchPolicy.Stato {
+		@Override
+		public int getZone() {
+			return agenti.length;
+		}
 		
-		for(Integer d : agenti.keySet()) {
-			// Prima di sovrascrivere la distanza migliore devo chiedermi se ci sono agenti disponibili nel disretto
-			if(agenti.get(d) > 0) {
-				if(district_id.equals(d)) {
-					// La distanza sarà 0 se siamo nello stesso distretto
-					distanza = 0.0;
-					distretto = d;
-				}
-				else if(grafo.getEdgeWeight(grafo.getEdge(district_id, d)) < distanza) {
-					// Se i due distretti non sono uguali
-					distanza = grafo.getEdgeWeight(grafo.getEdge(district_id, d));
-					distretto = d;
-				}
-			} 
+		@Override
+		public int getAgenti() {
+			return N;
+		}
+		
+		@Override
+		public int getLiberi() {
+			return liberi;
+		}
+		
+		@Override
+		public int getLiberi(int zona) {
+			return agenti[zona];
+		}
+		
+		@Override
+		public int getCentrale() {
+			return centrale;
+		}
+		
+		@Override
+		public int vicino(int zona, int k) {
+			return percorsi.vicino(zona, k);
+		}
+		
+		@Override
+		public long tempo(int da, int a, long partenza) {
+			return percorsi.tempo(da, a, partenza);
 		}
-		return distretto;
 	}
 }
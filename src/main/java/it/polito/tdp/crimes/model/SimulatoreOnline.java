@@ -0,0 +1,235 @@
+package it.polito.tdp.crimes.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Esegue un {@link Simulatore} in modalità online su un thread dedicato, come centrale "ombra" accanto a quella
+ * reale: i crimini vengono iniettati man mano che arrivano (anche da una {@link it.polito.tdp.crimes.db.PipelineIngestione},
+ * di cui può essere destinatario) e il tempo simulato avanza con il tempo reale moltiplicato per un fattore.
+ * <p>
+ * Le decisioni di invio e i crimini mal gestiti arrivano al SimulationListener del simulatore, sul thread
+ * dedicato, appena il tempo simulato raggiunge la segnalazione. Il thread dorme fino al prossimo evento in coda
+ * ma si sveglia subito quando arriva un crimine, quindi la latenza tra iniezione ed elaborazione è quella di
+ * un passaggio di coda più l'elaborazione dell'evento; viene misurata per ogni crimine in microsecondi.
+ */
+public class SimulatoreOnline implements Consumer<List<Event>> {
+	private static final long ATTESA_MASSIMA = TimeUnit.SECONDS.toNanos(1); // anche senza eventi il thread ricontrolla lo stato
+
+	private final Simulatore simulatore;
+	private final double velocita; // secondi simulati per secondo reale
+	private final BlockingQueue<Arrivo> arrivi;
+
+	private Thread thread;
+	private volatile boolean attivo;
+
+	private volatile Orologio orologio; // null finché l'orologio non è partito
+
+	private final ResponseTimeHistogram latenze = new ResponseTimeHistogram(); // microsecondi, protetto da sé stesso
+	private final AtomicLong iniettati = new AtomicLong();
+	private final AtomicLong ignorati = new AtomicLong();
+	private final AtomicLong elaborati = new AtomicLong();
+
+	/**
+	 * Istanti di partenza dell'orologio, pubblicati insieme: chi legge l'orologio da un altro thread (ad esempio
+	 * {@link SimulatoreOnline#getTempoSimulato()}) vede sempre una coppia coerente
+	 */
+	private static class Orologio {
+		final long inizioSimulato; // secondi dall'epoca
+		final long inizioReale; // System.nanoTime() alla partenza
+
+		Orologio(LocalDateTime inizio) {
+			this.inizioSimulato = inizio.toEpochSecond(ZoneOffset.UTC);
+			this.inizioReale = System.nanoTime();
+		}
+
+		// tempoSimulato = inizioSimulato + (nanoTime - inizioReale) * velocita
+		long tempoSimulato(double velocita) {
+			return inizioSimulato + (long) ((System.nanoTime() - inizioReale) * velocita / 1e9);
+		}
+	}
+
+	private static class Arrivo {
+		final Event crimine;
+		final long ricevuto; // System.nanoTime() all'iniezione
+
+		Arrivo(Event crimine, long ricevuto) {
+			this.crimine = crimine;
+			this.ricevuto = ricevuto;
+		}
+	}
+
+	/**
+	 * @param simulatore già preparato con {@link Simulatore#initOnline(Integer, Integer, DistanceMatrix)} e con il
+	 * listener che riceve le decisioni; da qui in poi è usato solo dal thread dedicato
+	 * @param velocita 1 per il tempo reale, ad esempio 60 per un'ora simulata al minuto
+	 * @param capacita crimini iniettati in attesa oltre i quali chi inietta si blocca
+	 */
+	public SimulatoreOnline(Simulatore simulatore, double velocita, int capacita) {
+		if(!(velocita > 0)) {
+			throw new IllegalArgumentException("Velocità non valida: " + velocita);
+		}
+		this.simulatore = simulatore;
+		this.velocita = velocita;
+		this.arrivi = new ArrayBlockingQueue<>(capacita);
+	}
+
+	/**
+	 * Avvia il thread con il tempo simulato che parte da inizio (ad esempio LocalDateTime.now() per seguire
+	 * gli eventi reali); con null parte dalla segnalazione del primo crimine iniettato
+	 */
+	public synchronized void avvia(LocalDateTime inizio) {
+		if(thread != null) {
+			throw new IllegalStateException("Simulatore online già avviato");
+		}
+		if(inizio != null) {
+			orologio = new Orologio(inizio);
+		}
+		attivo = true;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				esegui();
+			}
+		}, "simulatore-online");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Ferma il thread; dopo il ritorno il risultato del simulatore può essere letto
+	 */
+	public void ferma() throws InterruptedException {
+		Thread t;
+		synchronized(this) {
+			t = thread;
+		}
+		attivo = false;
+		if(t != null) {
+			t.interrupt();
+			t.join();
+		}
+	}
+
+	/**
+	 * Inietta un crimine; se troppi crimini sono in attesa si blocca finché il simulatore non li ha presi
+	 */
+	public void inietta(Event crimine) throws InterruptedException {
+		arrivi.put(new Arrivo(crimine, System.nanoTime()));
+	}
+
+	/**
+	 * Destinatario della pipeline di ingestione: inietta tutti i crimini del batch
+	 */
+	@Override
+	public void accept(List<Event> crimini) {
+		try {
+			for(Event e : crimini) {
+				inietta(e);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void esegui() {
+		List<Arrivo> lotto = new ArrayList<>();
+		try {
+			while(attivo) {
+				long attesa = ATTESA_MASSIMA;
+				Orologio o = orologio;
+				if(o != null) {
+					elaborati.addAndGet(simulatore.avanzaFino(o.tempoSimulato(velocita)));
+					long prossimo = simulatore.getProssimoIstante();
+					if(prossimo != Long.MAX_VALUE) {
+						// Nanosecondi reali fino al prossimo evento simulato (arrotondati per eccesso)
+						double mancano = (prossimo - o.tempoSimulato(velocita)) * 1e9 / velocita;
+						attesa = Math.max(0, Math.min(attesa, (long) Math.ceil(mancano)));
+					}
+				}
+				Arrivo primo = arrivi.poll(attesa, TimeUnit.NANOSECONDS);
+				if(primo == null) {
+					continue;
+				}
+				lotto.clear();
+				lotto.add(primo);
+				arrivi.drainTo(lotto);
+				if(o == null) {
+					o = new Orologio(primo.crimine.getReported_date());
+					orologio = o;
+				}
+				// Prima porto la simulazione all'istante attuale, poi inserisco ed elaboro i crimini arrivati
+				long adesso = o.tempoSimulato(velocita);
+				elaborati.addAndGet(simulatore.avanzaFino(adesso));
+				for(Arrivo a : lotto) {
+					if(simulatore.inserisci(a.crimine)) {
+						iniettati.incrementAndGet();
+					} else {
+						ignorati.incrementAndGet();
+					}
+				}
+				elaborati.addAndGet(simulatore.avanzaFino(adesso));
+				long fine = System.nanoTime();
+				synchronized(latenze) {
+					for(Arrivo a : lotto) {
+						latenze.registra((fine - a.ricevuto) / 1000);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// ferma()
+		}
+	}
+
+	/**
+	 * Tempo simulato corrente, null se l'orologio non è ancora partito
+	 */
+	public LocalDateTime getTempoSimulato() {
+		Orologio o = orologio;
+		return o == null ? null : LocalDateTime.ofEpochSecond(o.tempoSimulato(velocita), 0, ZoneOffset.UTC);
+	}
+
+	/**
+	 * Copia dell'istogramma delle latenze tra iniezione ed elaborazione, in microsecondi
+	 */
+	public ResponseTimeHistogram getLatenze() {
+		ResponseTimeHistogram copia = new ResponseTimeHistogram();
+		synchronized(latenze) {
+			copia.aggiungi(latenze);
+		}
+		return copia;
+	}
+
+	public long getIniettati() {
+		return iniettati.get();
+	}
+
+	/**
+	 * Crimini ignorati perché la loro zona non è nella rete
+	 */
+	public long getIgnorati() {
+		return ignorati.get();
+	}
+
+	public long getEventiElaborati() {
+		return elaborati.get();
+	}
+
+	public int getInAttesa() {
+		return arrivi.size();
+	}
+
+	/**
+	 * Risultati della simulazione: da leggere dopo {@link #ferma()}, mentre il thread lavora non sono coerenti
+	 */
+	public SimulationResult getRisultato() {
+		return simulatore.getRisultato();
+	}
+}
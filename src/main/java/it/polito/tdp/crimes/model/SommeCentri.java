@@ -0,0 +1,74 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Somme delle coordinate e numero di eventi di ogni zona della rete in un anno. Il centro di una zona è la
+ * media delle coordinate dei suoi eventi, quindi con le somme si aggiorna evento per evento senza rileggere il DB.
+ */
+class SommeCentri {
+	private final Granularita granularita;
+	private final int[] id; // indice denso della zona -> id, come nella matrice su cui sono state lette
+	private final double[] sommaLat; // indice denso della zona -> somma delle latitudini dei suoi eventi
+	private final double[] sommaLon;
+	private final long[] eventi;
+
+	/**
+	 * @param somme valore della colonna della zona -> {somma lat, somma lon, eventi}, come le restituisce
+	 * {@link it.polito.tdp.crimes.db.EventsDao#sommeZone(Granularita, int)}
+	 */
+	SommeCentri(DistanceMatrix distanze, Zonizzazione zone, Map<String, double[]> somme) {
+		int n = distanze.size();
+		granularita = zone.getGranularita();
+		id = new int[n];
+		for(int i = 0; i < n; i++) {
+			id[i] = distanze.getId(i);
+		}
+		sommaLat = new double[n];
+		sommaLon = new double[n];
+		eventi = new long[n];
+		for(Map.Entry<String, double[]> e : somme.entrySet()) {
+			int i = distanze.indiceDi(zone.id(e.getKey()));
+			if(i >= 0) {
+				double[] s = e.getValue();
+				sommaLat[i] += s[0];
+				sommaLon[i] += s[1];
+				eventi[i] += (long) s[2];
+			}
+		}
+	}
+
+	/**
+	 * @return true se la matrice ha le stesse zone, con gli stessi indici, di quella su cui sono state lette le somme
+	 */
+	boolean stessaRete(DistanceMatrix distanze, Zonizzazione zone) {
+		if(zone.getGranularita() != granularita || distanze.size() != id.length) {
+			return false;
+		}
+		for(int i = 0; i < id.length; i++) {
+			if(distanze.getId(i) != id[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void aggiungi(int zona, double lat, double lon) {
+		sommaLat[zona] += lat;
+		sommaLon[zona] += lon;
+		eventi[zona]++;
+	}
+
+	long getEventi(int zona) {
+		return eventi[zona];
+	}
+
+	double getLat(int zona) {
+		return sommaLat[zona] / eventi[zona];
+	}
+
+	double getLon(int zona) {
+		return sommaLon[zona] / eventi[zona];
+	}
+}
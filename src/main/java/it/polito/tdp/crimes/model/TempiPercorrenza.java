@@ -0,0 +1,279 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Tempi di percorrenza (in secondi) tra le zone della rete, calcolati una volta per ogni rete: durante la
+ * simulazione il tempo di un invio è una lettura dalla matrice moltiplicata per il fattore dell'ora di partenza.
+ * <p>
+ * Sul grafo completo il percorso tra due zone è la linea d'aria tra i centri. Sul grafo dei k vicini gli agenti
+ * si muovono lungo gli archi, quindi il percorso è il cammino minimo sul grafo (Dijkstra da ogni zona); le coppie
+ * di zone in componenti diverse del grafo restano collegate in linea d'aria.
+ * La velocità dipende solo dall'ora ed è la stessa su tutti i percorsi, quindi l'ordine delle zone per tempo di
+ * percorrenza non cambia durante il giorno e viene calcolato una volta sola.
+ */
+public class TempiPercorrenza {
+	private final DistanceMatrix distanze;
+	private final int n;
+	private final double[] secondi; // secondi[i*n + j] alla velocità predefinita
+	private final int[] vicini; // riga i: zone per tempo crescente da i; null se è l'ordine in linea d'aria della matrice
+	private final ProfiloVelocita profilo;
+	private final double[] fattore; // ora -> moltiplicatore dei tempi rispetto alla velocità predefinita
+
+	/**
+	 * Tempi in linea d'aria alla velocità predefinita, costante per tutto il giorno
+	 */
+	public TempiPercorrenza(DistanceMatrix distanze) {
+		this(distanze, 0, ProfiloVelocita.costante(ProfiloVelocita.VELOCITA_PREDEFINITA));
+	}
+
+	/**
+	 * @param k se 0 < k < n-1 gli agenti si muovono sul grafo dei k vicini di ogni zona (come in
+	 * {@link Model#setViciniPerZona(int)}), altrimenti in linea d'aria
+	 */
+	public TempiPercorrenza(DistanceMatrix distanze, int k, ProfiloVelocita profilo) {
+		this.distanze = distanze;
+		this.n = distanze.size();
+		this.secondi = new double[n*n];
+		if(k <= 0 || k >= n - 1) {
+			for(int i = 0; i < n; i++) {
+				for(int j = 0; j < n; j++) {
+					secondi[i*n + j] = secondi(distanze.distanza(i, j));
+				}
+			}
+			this.vicini = null;
+		} else {
+			double[] km = camminiMinimi(k);
+			for(int c = 0; c < n*n; c++) {
+				secondi[c] = secondi(km[c]);
+			}
+			this.vicini = new int[n*n];
+			for(int i = 0; i < n; i++) {
+				ordinaVicini(km, i);
+			}
+		}
+		this.profilo = profilo;
+		this.fattore = fattori(profilo);
+	}
+
+	/**
+	 * Copia indipendente dei tempi, su una copia della loro matrice delle distanze, che gli aggiornamenti della
+	 * rete originale non toccano. L'ordine dei vicini e il profilo non vengono mai modificati e restano condivisi.
+	 */
+	public TempiPercorrenza(TempiPercorrenza altri) {
+		this.distanze = new DistanceMatrix(altri.distanze);
+		this.n = altri.n;
+		this.secondi = altri.secondi.clone();
+		this.vicini = altri.vicini;
+		this.profilo = altri.profilo;
+		this.fattore = altri.fattore;
+	}
+
+	private TempiPercorrenza(TempiPercorrenza base, ProfiloVelocita profilo) {
+		this.distanze = base.distanze;
+		this.n = base.n;
+		this.secondi = base.secondi;
+		this.vicini = base.vicini;
+		this.profilo = profilo;
+		this.fattore = fattori(profilo);
+	}
+
+	/**
+	 * Gli stessi percorsi con un altro profilo di velocità (le matrici sono condivise, non ricalcolate)
+	 */
+	public TempiPercorrenza conProfilo(ProfiloVelocita profilo) {
+		return new TempiPercorrenza(this, profilo);
+	}
+
+	/**
+	 * Ricalcola i tempi da e verso la zona i dopo che la matrice delle distanze ne ha spostato il centro.
+	 * Sul grafo dei k vicini lo spostamento può cambiare archi e cammini minimi ovunque, quindi non si può
+	 * aggiornare solo una riga.
+	 * @return false se i tempi vanno ricalcolati da capo
+	 */
+	boolean aggiornaZona(int i) {
+		if(vicini != null) {
+			return false;
+		}
+		for(int j = 0; j < n; j++) {
+			secondi[i*n + j] = secondi(distanze.distanza(i, j));
+			secondi[j*n + i] = secondi[i*n + j];
+		}
+		return true;
+	}
+
+	private static double[] fattori(ProfiloVelocita profilo) {
+		double[] f = new double[24];
+		for(int ora = 0; ora < 24; ora++) {
+			f[ora] = ProfiloVelocita.VELOCITA_PREDEFINITA / profilo.getVelocita(ora);
+		}
+		return f;
+	}
+
+	private static double secondi(double km) {
+		return (km*1000)/(ProfiloVelocita.VELOCITA_PREDEFINITA/3.6); // Velocità = spazio/tempo
+	}
+
+	/**
+	 * Lunghezze in km dei cammini minimi tra tutte le zone sul grafo dei k vicini, con Dijkstra da ogni zona
+	 * su liste di adiacenza e heap di array primitivi
+	 */
+	private double[] camminiMinimi(int k) {
+		// Liste di adiacenza compatte: gli archi di i sono archi[inizio[i] .. inizio[i+1]). Ogni zona ha i suoi
+		// k archi più quelli delle zone che la hanno tra i loro vicini (gli archi doppi non danno fastidio)
+		int[] inizio = new int[n + 1];
+		for(int i = 0; i < n; i++) {
+			for(int r = 1; r <= k; r++) {
+				inizio[i + 1]++;
+				inizio[distanze.vicino(i, r) + 1]++;
+			}
+		}
+		for(int i = 0; i < n; i++) {
+			inizio[i + 1] += inizio[i];
+		}
+		int[] archi = new int[inizio[n]];
+		int[] riempiti = Arrays.copyOf(inizio, n);
+		for(int i = 0; i < n; i++) {
+			for(int r = 1; r <= k; r++) {
+				int j = distanze.vicino(i, r);
+				archi[riempiti[i]++] = j;
+				archi[riempiti[j]++] = i;
+			}
+		}
+
+		double[] km = new double[n*n];
+		double[] heapDistanza = new double[archi.length + 1];
+		int[] heapZona = new int[archi.length + 1];
+		boolean[] chiuso = new boolean[n];
+		for(int s = 0; s < n; s++) {
+			double[] d = new double[n];
+			Arrays.fill(d, Double.POSITIVE_INFINITY);
+			Arrays.fill(chiuso, false);
+			d[s] = 0;
+			// Heap con cancellazione pigra: una zona può comparire più volte, vale la prima estratta
+			int dimensione = 0;
+			heapDistanza[0] = 0;
+			heapZona[0] = s;
+			dimensione++;
+			while(dimensione > 0) {
+				int u = heapZona[0];
+				double du = heapDistanza[0];
+				dimensione--;
+				giu(heapDistanza, heapZona, dimensione, heapDistanza[dimensione], heapZona[dimensione]);
+				if(chiuso[u]) {
+					continue;
+				}
+				chiuso[u] = true;
+				for(int e = inizio[u]; e < inizio[u + 1]; e++) {
+					int v = archi[e];
+					double dv = du + distanze.distanza(u, v);
+					if(dv < d[v]) {
+						d[v] = dv;
+						su(heapDistanza, heapZona, dimensione++, dv, v);
+					}
+				}
+			}
+			for(int j = 0; j < n; j++) {
+				// Zone non raggiungibili sul grafo: in linea d'aria
+				km[s*n + j] = d[j] != Double.POSITIVE_INFINITY ? d[j] : distanze.distanza(s, j);
+			}
+		}
+		return km;
+	}
+
+	private static void su(double[] distanza, int[] zona, int i, double d, int z) {
+		while(i > 0) {
+			int padre = (i - 1) >>> 1;
+			if(distanza[padre] <= d) {
+				break;
+			}
+			distanza[i] = distanza[padre];
+			zona[i] = zona[padre];
+			i = padre;
+		}
+		distanza[i] = d;
+		zona[i] = z;
+	}
+
+	private static void giu(double[] distanza, int[] zona, int dimensione, double d, int z) {
+		if(dimensione == 0) {
+			return;
+		}
+		int i = 0;
+		while(true) {
+			int figlio = 2*i + 1;
+			if(figlio >= dimensione) {
+				break;
+			}
+			if(figlio + 1 < dimensione && distanza[figlio + 1] < distanza[figlio]) {
+				figlio++;
+			}
+			if(d <= distanza[figlio]) {
+				break;
+			}
+			distanza[i] = distanza[figlio];
+			zona[i] = zona[figlio];
+			i = figlio;
+		}
+		distanza[i] = d;
+		zona[i] = z;
+	}
+
+	private void ordinaVicini(final double[] km, final int origine) {
+		Integer[] riga = new Integer[n];
+		for(int j = 0; j < n; j++) {
+			riga[j] = j;
+		}
+		// Come in DistanceMatrix: prima la zona stessa, poi a parità di percorso quella con indice minore
+		Arrays.sort(riga, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				if(o1 == origine || o2 == origine) {
+					return o1 == origine ? (o2 == origine ? 0 : -1) : 1;
+				}
+				int c = Double.compare(km[origine*n + o1], km[origine*n + o2]);
+				return c != 0 ? c : o1.compareTo(o2);
+			}
+		});
+		for(int j = 0; j < n; j++) {
+			vicini[origine*n + j] = riga[j];
+		}
+	}
+
+	/**
+	 * Ora del giorno (0-23) di un istante in secondi dall'epoca, come li usa il simulatore
+	 */
+	static int ora(long istante) {
+		return (int) (Math.floorMod(istante, 24 * 3600L) / 3600);
+	}
+
+	/**
+	 * Secondi per andare dalla zona i alla zona j (indici densi) partendo all'istante indicato
+	 */
+	public long tempo(int i, int j, long partenza) {
+		return (long) (secondi[i*n + j] * fattore[ora(partenza)]);
+	}
+
+	/**
+	 * Secondi per percorrere km chilometri partendo all'istante indicato (per gli spostamenti tra punti)
+	 */
+	public long tempo(double km, long partenza) {
+		return (long) (secondi(km) * fattore[ora(partenza)]);
+	}
+
+	/**
+	 * Il k-esimo distretto più vicino per tempo di percorrenza a quello di indice i: k = 0 è il distretto stesso
+	 */
+	public int vicino(int i, int k) {
+		return vicini != null ? vicini[i*n + k] : distanze.vicino(i, k);
+	}
+
+	public DistanceMatrix getDistanze() {
+		return distanze;
+	}
+
+	public ProfiloVelocita getProfilo() {
+		return profilo;
+	}
+}
@@ -0,0 +1,11 @@
+package it.polito.tdp.crimes.model;
+
+/**
+ * Tipi di record delle tracce della simulazione: il codice è l'ordinale, usato nel formato binario
+ */
+public enum TipoTraccia {
+	CRIMINE,
+	ARRIVA_AGENTE,
+	MAL_GESTITO,
+	GESTITO
+}
@@ -0,0 +1,122 @@
+package it.polito.tdp.crimes.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Traccia in memoria degli ultimi eventi della simulazione: un buffer circolare su array primitivi,
+ * quindi registrare un evento non alloca nulla. Quando è pieno i record più vecchi vengono sovrascritti.
+ * Va usato dal solo thread della simulazione.
+ */
+public class TraceRingBuffer implements SimulationListener {
+	private static final TipoTraccia[] TIPI = TipoTraccia.values();
+
+	private final byte[] tipo;
+	private final long[] tempo;
+	private final long[] incidente;
+	private final int[] distretto;
+	private final int maschera;
+	private long scritti; // record registrati dall'inizio (anche quelli sovrascritti)
+
+	/**
+	 * @param capacita numero di record conservati, arrotondato alla potenza di 2 successiva
+	 */
+	public TraceRingBuffer(int capacita) {
+		int n = Integer.highestOneBit(Math.max(capacita - 1, 1)) << 1;
+		tipo = new byte[n];
+		tempo = new long[n];
+		incidente = new long[n];
+		distretto = new int[n];
+		maschera = n - 1;
+	}
+
+	private void registra(TipoTraccia t, long istante, Event crimine) {
+		int i = (int) (scritti++ & maschera);
+		tipo[i] = (byte) t.ordinal();
+		tempo[i] = istante;
+		incidente[i] = crimine.getIncident_id();
+		distretto[i] = AsyncTraceWriter.distretto(crimine);
+	}
+
+	@Override
+	public void crimine(long tempo, Event crimine) {
+		registra(TipoTraccia.CRIMINE, tempo, crimine);
+	}
+
+	/**
+	 * L'invio non viene registrato: nella traccia resta l'arrivo dell'agente
+	 */
+	@Override
+	public void invio(long tempo, Event crimine, int partenza, long arrivo) {
+	}
+
+	@Override
+	public void arrivoAgente(long tempo, Event crimine) {
+		registra(TipoTraccia.ARRIVA_AGENTE, tempo, crimine);
+	}
+
+	@Override
+	public void malGestito(long tempo, Event crimine) {
+		registra(TipoTraccia.MAL_GESTITO, tempo, crimine);
+	}
+
+	@Override
+	public void gestito(long tempo, Event crimine) {
+		registra(TipoTraccia.GESTITO, tempo, crimine);
+	}
+
+	/**
+	 * Numero di record attualmente conservati
+	 */
+	public int size() {
+		return (int) Math.min(scritti, tipo.length);
+	}
+
+	/**
+	 * Numero di record registrati dall'inizio, compresi quelli già sovrascritti
+	 */
+	public long getScritti() {
+		return scritti;
+	}
+
+	// i = 0 è il record più vecchio tra quelli conservati
+	private int posizione(int i) {
+		if(i < 0 || i >= size()) {
+			throw new IndexOutOfBoundsException("Record " + i + " non presente");
+		}
+		return (int) ((scritti - size() + i) & maschera);
+	}
+
+	public TipoTraccia getTipo(int i) {
+		return TIPI[tipo[posizione(i)]];
+	}
+
+	public long getTempo(int i) {
+		return tempo[posizione(i)];
+	}
+
+	public long getIncidente(int i) {
+		return incidente[posizione(i)];
+	}
+
+	/**
+	 * @return {@link AsyncTraceWriter#NESSUN_DISTRETTO} se il crimine non ha un distretto
+	 */
+	public int getDistretto(int i) {
+		return distretto[posizione(i)];
+	}
+
+	/**
+	 * I record conservati in forma leggibile, dal più vecchio al più recente
+	 */
+	public List<String> getRecord() {
+		List<String> list = new ArrayList<>();
+		for(int i = 0; i < size(); i++) {
+			list.add(LocalDateTime.ofEpochSecond(getTempo(i), 0, ZoneOffset.UTC) + " " + getTipo(i)
+					+ " " + getIncidente(i) + " (distretto " + getDistretto(i) + ")");
+		}
+		return list;
+	}
+}
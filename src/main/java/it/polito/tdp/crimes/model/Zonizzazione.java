@@ -0,0 +1,112 @@
+package it.polito.tdp.crimes.model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.javadocmd.simplelatlng.LatLng;
+
+import it.polito.tdp.crimes.db.SorgenteEventi;
+
+/**
+ * Associa a ogni evento l'id intero della sua zona alla granularità scelta, così grafo, matrice delle distanze
+ * e simulatore lavorano sempre su id interi. Distretti e precinti usano il loro id; i quartieri, che nel DB
+ * sono stringhe, sono numerati da 1 in ordine alfabetico.
+ */
+public class Zonizzazione {
+	public static final Zonizzazione DISTRETTI = new Zonizzazione(Granularita.DISTRETTO, new String[0]);
+
+	private final Granularita granularita;
+	private final String[] quartieri; // ordinati, solo per i quartieri: quartieri[id-1]
+
+	private Zonizzazione(Granularita granularita, String[] quartieri) {
+		this.granularita = granularita;
+		this.quartieri = quartieri;
+	}
+
+	/**
+	 * @param valori tutti i valori che la colonna della granularità può assumere (servono solo per i quartieri)
+	 */
+	public static Zonizzazione crea(Granularita granularita, Collection<String> valori) {
+		if(granularita == Granularita.DISTRETTO) {
+			return DISTRETTI;
+		}
+		String[] quartieri = new String[0];
+		if(granularita == Granularita.QUARTIERE) {
+			quartieri = valori.toArray(new String[valori.size()]);
+			Arrays.sort(quartieri);
+		}
+		return new Zonizzazione(granularita, quartieri);
+	}
+
+	public Granularita getGranularita() {
+		return granularita;
+	}
+
+	/**
+	 * Id della zona con il valore indicato, -1 se il valore manca o non è una zona nota
+	 */
+	public int id(String valore) {
+		if(valore == null) {
+			return -1;
+		}
+		if(granularita == Granularita.QUARTIERE) {
+			int i = Arrays.binarySearch(quartieri, valore);
+			return i >= 0 ? i + 1 : -1;
+		}
+		try {
+			return Integer.parseInt(valore);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Id della zona in cui si è verificato l'evento
+	 */
+	public int zona(Event e) {
+		switch(granularita) {
+			case DISTRETTO:
+				return e.getDistrict_id() == null ? -1 : e.getDistrict_id();
+			case PRECINTO:
+				return e.getPrecinct_id() == null ? -1 : e.getPrecinct_id();
+			default:
+				return id(e.getNeighborhood_id());
+		}
+	}
+
+	/**
+	 * Nome leggibile della zona (per distretti e precinti è l'id stesso)
+	 */
+	public String nome(int id) {
+		if(granularita == Granularita.QUARTIERE) {
+			return id >= 1 && id <= quartieri.length ? quartieri[id-1] : "?";
+		}
+		return String.valueOf(id);
+	}
+
+	/**
+	 * Riporta una mappa valore della colonna -> centro su id delle zone
+	 */
+	public Map<Integer, LatLng> perId(Map<String, LatLng> centri) {
+		Map<Integer, LatLng> result = new HashMap<>();
+		for(Map.Entry<String, LatLng> e : centri.entrySet()) {
+			int id = id(e.getKey());
+			if(id >= 0) {
+				result.put(id, e.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Zona con meno crimini nell'anno, dove vengono messi inizialmente gli agenti
+	 */
+	public Integer zonaMin(SorgenteEventi dao, int anno) {
+		if(granularita == Granularita.DISTRETTO) {
+			return dao.getDistrettoMin(anno);
+		}
+		return id(dao.getZonaMin(granularita, anno));
+	}
+}